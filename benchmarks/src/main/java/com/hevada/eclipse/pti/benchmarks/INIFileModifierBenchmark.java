@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.hevada.eclipse.pti.core.php.inifile.INIFileModifier;
+
+/**
+ * Reads, modifies and writes back a generated php.ini the way
+ * PHPToolLauncher.createCustomPHPINIFile prepares the php.ini of a tool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class INIFileModifierBenchmark {
+
+	@Param({ "100", "2000" })
+	public int entries;
+
+	private byte[] content;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		content = PHPSources.generateINI(entries).getBytes(
+				StandardCharsets.UTF_8);
+		file = File.createTempFile("benchmark", ".ini"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Setup(Level.Invocation)
+	public void resetFile() throws IOException {
+		Files.write(file.toPath(), content);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public String read() throws IOException {
+		INIFileModifier modifier = new INIFileModifier(file);
+		return modifier.getEntry("PHP", "memory_limit"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Benchmark
+	public void readModifyFlush() throws IOException {
+		INIFileModifier modifier = new INIFileModifier(file);
+		modifier.removeAllEntries("extension", "^xdebug.*$"); //$NON-NLS-1$ //$NON-NLS-2$
+		modifier.removeAllEntries("zend_extension", "^.*xdebug.*$"); //$NON-NLS-1$ //$NON-NLS-2$
+		modifier.addEntry("Date", "date.timezone", "Europe/Berlin"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		String includePath = "/opt/pti/library"; //$NON-NLS-1$
+		String oldIncludePath = modifier.getEntry("PHP", "include_path"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (oldIncludePath != null)
+			includePath += File.pathSeparator + oldIncludePath;
+		modifier.addEntry("PHP", "include_path", includePath, true, null); //$NON-NLS-1$ //$NON-NLS-2$
+		modifier.addEntry("PHP", "memory_limit", "512M", true, null); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		modifier.close();
+	}
+}
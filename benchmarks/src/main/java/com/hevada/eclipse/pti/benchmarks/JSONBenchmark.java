@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.CDL;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.json.XML;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses and writes the tool reports handled by the bundled org.json
+ * classes: a JSON report of problems, the same report as XML and as CSV.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONBenchmark {
+
+	@Param({ "10", "1000" })
+	public int problems;
+
+	private String json;
+	private String xml;
+	private String csv;
+	private String message;
+	private JSONObject report;
+
+	@Setup
+	public void setUp() throws JSONException {
+		json = Reports.json(problems);
+		xml = Reports.xml(problems);
+		csv = Reports.csv(problems);
+		message = Reports.message();
+		report = new JSONObject(json);
+	}
+
+	@Benchmark
+	public Object tokenize() throws JSONException {
+		return new JSONTokener(json).nextValue();
+	}
+
+	@Benchmark
+	public JSONObject parse() throws JSONException {
+		return new JSONObject(json);
+	}
+
+	@Benchmark
+	public String serialize() {
+		return report.toString();
+	}
+
+	@Benchmark
+	public String quote() {
+		return JSONObject.quote(message);
+	}
+
+	@Benchmark
+	public JSONObject xmlToJSONObject() throws JSONException {
+		return XML.toJSONObject(xml);
+	}
+
+	@Benchmark
+	public JSONArray csvToJSONArray() throws JSONException {
+		return CDL.toJSONArray(csv);
+	}
+}
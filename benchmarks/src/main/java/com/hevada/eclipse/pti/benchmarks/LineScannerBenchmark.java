@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.hevada.eclipse.pti.core.php.source.PHPSourceLineScanner;
+
+/**
+ * Compares the char by char line scanning PHPSourceFile used before 1.7.0
+ * with {@link PHPSourceLineScanner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineScannerBenchmark {
+
+	@Param({ "10240", "1048576", "52428800" })
+	public int size;
+
+	private byte[] content;
+
+	@Setup
+	public void setUp() {
+		content = PHPSources.generate(size).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public void charByChar(Blackhole blackhole) throws IOException {
+		ArrayList<Integer> lineStarts = new ArrayList<Integer>();
+		ArrayList<Integer> lineEnds = new ArrayList<Integer>();
+		ArrayList<Integer> lineStartTabCount = new ArrayList<Integer>();
+
+		InputStreamReader isr = new InputStreamReader(new ByteArrayInputStream(
+				content), StandardCharsets.UTF_8);
+
+		int last = -1;
+		int i = 0;
+		int c;
+		boolean countTabs = true;
+		int tabCount = 0;
+		while ((c = isr.read()) != -1) {
+			if ((char) c == '\n') {
+				lineStarts.add(Integer.valueOf(last + 1));
+				lineEnds.add(Integer.valueOf(i));
+				lineStartTabCount.add(Integer.valueOf(tabCount));
+				last = i;
+				countTabs = true;
+				tabCount = 0;
+			} else if (countTabs && (char) c == '\t') {
+				++tabCount;
+			} else if ((char) c != ' ') {
+				countTabs = false;
+			}
+			i++;
+		}
+
+		lineStarts.add(Integer.valueOf(last + 1));
+		lineEnds.add(Integer.valueOf(i));
+		lineStartTabCount.add(Integer.valueOf(tabCount));
+
+		blackhole.consume(lineStarts);
+		blackhole.consume(lineEnds);
+		blackhole.consume(lineStartTabCount);
+	}
+
+	@Benchmark
+	public void bulk(Blackhole blackhole) throws IOException {
+		PHPSourceLineScanner scanner = new PHPSourceLineScanner();
+		Reader reader = new InputStreamReader(new ByteArrayInputStream(content),
+				StandardCharsets.UTF_8);
+		try {
+			scanner.scan(reader);
+		} finally {
+			reader.close();
+		}
+
+		blackhole.consume(scanner.getLineStarts());
+		blackhole.consume(scanner.getLineEnds());
+		blackhole.consume(scanner.getLineStartTabCount());
+	}
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.hevada.eclipse.pti.core.launching.OperatingSystem;
+
+/**
+ * Escapes the file arguments of a tool command line. The result depends on
+ * the operating system the benchmark runs on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OperatingSystemBenchmark {
+
+	public String path = "/home/developer/workspace/My Project/library/Zend/Controller/Action Helper.php"; //$NON-NLS-1$
+
+	@Benchmark
+	public String escapeShellArg() {
+		return OperatingSystem.escapeShellArg(path);
+	}
+
+	@Benchmark
+	public String escapeShellFileArg() {
+		return OperatingSystem.escapeShellFileArg(path);
+	}
+
+	@Benchmark
+	public String escapePHPFileArg() {
+		return OperatingSystem.escapePHPFileArg(path);
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+/**
+ * Generates PHP sources and php.ini files for the benchmarks.
+ */
+final class PHPSources {
+	private static final String CLASS_TEMPLATE = "class Generated_Class_%d extends Generated_Base\n" //$NON-NLS-1$
+			+ "{\n" //$NON-NLS-1$
+			+ "\tprotected $value = %d;\n" //$NON-NLS-1$
+			+ "\n" //$NON-NLS-1$
+			+ "\t/**\n" //$NON-NLS-1$
+			+ "\t * Returns the value multiplied by the given factor\n" //$NON-NLS-1$
+			+ "\t */\n" //$NON-NLS-1$
+			+ "\tpublic function multiply($factor)\n" //$NON-NLS-1$
+			+ "\t{\n" //$NON-NLS-1$
+			+ "\t\tif ($factor === null) {\n" //$NON-NLS-1$
+			+ "\t\t\tthrow new InvalidArgumentException('factor missing');\n" //$NON-NLS-1$
+			+ "\t\t}\n" //$NON-NLS-1$
+			+ "\t\treturn $this->value * $factor;\n" //$NON-NLS-1$
+			+ "\t}\n" //$NON-NLS-1$
+			+ "}\n\n"; //$NON-NLS-1$
+
+	private PHPSources() {
+	}
+
+	/**
+	 * Returns PHP source of exactly <code>size</code> characters.
+	 */
+	static String generate(int size) {
+		StringBuilder source = new StringBuilder(size + 512);
+		source.append("<?php\n"); //$NON-NLS-1$
+		for (int i = 0; source.length() < size; ++i) {
+			source.append(String.format(CLASS_TEMPLATE, i, i));
+		}
+		source.setLength(size);
+		return source.toString();
+	}
+
+	/**
+	 * Returns a php.ini with about <code>entries</code> entries, spread over a
+	 * few sections and mixed with comments and blank lines.
+	 */
+	static String generateINI(int entries) {
+		StringBuilder ini = new StringBuilder();
+		ini.append("[PHP]\n"); //$NON-NLS-1$
+		ini.append("; generated for the benchmarks\n"); //$NON-NLS-1$
+		ini.append("memory_limit = 128M\n"); //$NON-NLS-1$
+		ini.append("include_path = \".:/usr/share/php\"\n"); //$NON-NLS-1$
+		ini.append("extension=xdebug.so\n"); //$NON-NLS-1$
+		ini.append("zend_extension=/usr/lib/php/modules/xdebug.so\n"); //$NON-NLS-1$
+		for (int i = 0; i < entries; ++i) {
+			if (i % 100 == 99)
+				ini.append("\n[Section").append(i / 100).append("]\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			if (i % 10 == 0)
+				ini.append("; option group ").append(i / 10).append('\n'); //$NON-NLS-1$
+			ini.append("generated.option_").append(i).append(" = ") //$NON-NLS-1$ //$NON-NLS-2$
+					.append(i % 2 == 0 ? "On" : "\"value " + i + '"').append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return ini.toString();
+	}
+}
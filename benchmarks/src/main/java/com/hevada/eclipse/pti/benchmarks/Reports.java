@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+/**
+ * Generates tool reports with a given number of problems for the benchmarks.
+ */
+final class Reports {
+	private static final String FILE = "/home/developer/workspace/project/library/Generated/Class.php"; //$NON-NLS-1$
+
+	private Reports() {
+	}
+
+	static String message() {
+		return "Missing \"@return\" tag in function comment\n\tat line 12, see <http://pear.php.net/manual/en/standards.php>"; //$NON-NLS-1$
+	}
+
+	static String json(int problems) {
+		StringBuilder report = new StringBuilder();
+		report.append("{\"totals\":{\"errors\":").append(problems) //$NON-NLS-1$
+				.append(",\"warnings\":0},\"files\":{\"").append(FILE) //$NON-NLS-1$
+				.append("\":{\"messages\":["); //$NON-NLS-1$
+		for (int i = 0; i < problems; ++i) {
+			if (i > 0)
+				report.append(',');
+			report.append("{\"message\":\"Missing \\\"@return\\\" tag in function comment\",") //$NON-NLS-1$
+					.append("\"source\":\"PEAR.Commenting.FunctionComment.MissingReturn\",") //$NON-NLS-1$
+					.append("\"severity\":5,\"type\":\"ERROR\",\"line\":").append(i + 1) //$NON-NLS-1$
+					.append(",\"column\":").append(i % 80 + 1) //$NON-NLS-1$
+					.append(",\"fixable\":false}"); //$NON-NLS-1$
+		}
+		report.append("]}}}"); //$NON-NLS-1$
+		return report.toString();
+	}
+
+	static String xml(int problems) {
+		StringBuilder report = new StringBuilder();
+		report.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<checkstyle version=\"1.5.6\">\n<file name=\"") //$NON-NLS-1$
+				.append(FILE).append("\">\n"); //$NON-NLS-1$
+		for (int i = 0; i < problems; ++i) {
+			report.append("<error line=\"").append(i + 1) //$NON-NLS-1$
+					.append("\" column=\"").append(i % 80 + 1) //$NON-NLS-1$
+					.append("\" severity=\"error\" message=\"Missing &quot;@return&quot; tag in function comment\"") //$NON-NLS-1$
+					.append(" source=\"PEAR.Commenting.FunctionComment.MissingReturn\"/>\n"); //$NON-NLS-1$
+		}
+		report.append("</file>\n</checkstyle>\n"); //$NON-NLS-1$
+		return report.toString();
+	}
+
+	static String csv(int problems) {
+		StringBuilder report = new StringBuilder();
+		report.append("File,Line,Column,Type,Message,Source,Severity\n"); //$NON-NLS-1$
+		for (int i = 0; i < problems; ++i) {
+			report.append('"').append(FILE).append("\",").append(i + 1) //$NON-NLS-1$
+					.append(',').append(i % 80 + 1)
+					.append(",error,\"Missing @return tag in function comment\",") //$NON-NLS-1$
+					.append("PEAR.Commenting.FunctionComment.MissingReturn,5\n"); //$NON-NLS-1$
+		}
+		return report.toString();
+	}
+}
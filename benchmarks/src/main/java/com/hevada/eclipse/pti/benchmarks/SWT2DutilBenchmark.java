@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.hevada.eclipse.pti.ui.SWT2Dutil;
+
+/**
+ * Transforms the rectangles and points of an image canvas by a zoom and
+ * scroll transform. Only the SWT geometry classes are used, no display is
+ * needed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SWT2DutilBenchmark {
+
+	private AffineTransform transform;
+	private Rectangle rectangle;
+	private Point point;
+
+	@Setup
+	public void setUp() {
+		transform = new AffineTransform();
+		transform.translate(-120, -80);
+		transform.scale(1.5, 1.5);
+		rectangle = new Rectangle(640, 480, -320, -240);
+		point = new Point(321, 123);
+	}
+
+	@Benchmark
+	public Rectangle transformRect() {
+		return SWT2Dutil.transformRect(transform, rectangle);
+	}
+
+	@Benchmark
+	public Rectangle inverseTransformRect() {
+		return SWT2Dutil.inverseTransformRect(transform, rectangle);
+	}
+
+	@Benchmark
+	public Point transformPoint() {
+		return SWT2Dutil.transformPoint(transform, point);
+	}
+
+	@Benchmark
+	public Point inverseTransformPoint() {
+		return SWT2Dutil.inverseTransformPoint(transform, point);
+	}
+
+	@Benchmark
+	public Rectangle absRect() {
+		return SWT2Dutil.absRect(rectangle);
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.hevada.eclipse.pti.core.php.source.PHPSourceLineScanner;
+
+/**
+ * Maps problem offsets to line numbers, as done by
+ * PHPSourceFile.findLineNumberForOffset for every problem a tool reports.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SourceOffsetBenchmark {
+	private static final int OFFSETS = 1024;
+
+	@Param({ "10240", "1048576" })
+	public int size;
+
+	private int[] lineEnds;
+	private int[] offsets;
+
+	@Setup
+	public void setUp() throws IOException {
+		PHPSourceLineScanner scanner = new PHPSourceLineScanner();
+		scanner.scan(new StringReader(PHPSources.generate(size)));
+		lineEnds = scanner.getLineEnds();
+
+		Random random = new Random(42);
+		offsets = new int[OFFSETS];
+		for (int i = 0; i < OFFSETS; ++i) {
+			offsets[i] = random.nextInt(size);
+		}
+	}
+
+	@Benchmark
+	public void findLineNumber(Blackhole blackhole) {
+		for (int offset : offsets) {
+			blackhole.consume(PHPSourceLineScanner.findLineNumber(lineEnds,
+					offset));
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.ui;
+
+/**
+ * Stands in for the plugin Logger, which needs a running platform, so that
+ * plugin classes only logging errors can be benchmarked on their own.
+ */
+public class Logger {
+
+	public static void logException(Throwable exception) {
+		exception.printStackTrace();
+	}
+
+	public static void logException(String message, Throwable exception) {
+		System.err.println(message);
+		exception.printStackTrace();
+	}
+}
@@ -0,0 +1,138 @@
+<?php
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+/*
+ * Long-lived PHP tool worker used by PHPToolWorkerPool.
+ *
+ * The worker is started with a token as its only argument. Every response is
+ * a frame: the token, the decimal payload length, a line feed and the payload
+ * bytes. Requests are framed the same way, without the token. A request
+ * payload is the tool script followed by its arguments, separated by NUL
+ * bytes. The payload "PING" is answered with "PONG" and is used as health
+ * check.
+ *
+ * Right after startup the worker answers "READY", or "UNSUPPORTED" and exits
+ * if pcntl is not available. Every request runs in a forked child, so the
+ * tool may call exit(), declare classes and leave global state behind without
+ * harming the worker. The child reads its stdin from /dev/null. Output a tool
+ * writes past the output buffer, e.g. to STDOUT, reaches the pool before the
+ * response frame; the pool finds the frame by its token and prepends that
+ * output to the response.
+ */
+
+error_reporting(E_ALL);
+
+$ptiIn = fopen('php://stdin', 'rb');
+$ptiOut = fopen('php://stdout', 'wb');
+$ptiToken = isset($argv[1]) ? $argv[1] : '';
+
+function pti_read_frame($in)
+{
+	$header = fgets($in);
+	if ($header === false) {
+		return null;
+	}
+
+	$length = (int) trim($header);
+	$data = '';
+	while (strlen($data) < $length) {
+		$chunk = fread($in, $length - strlen($data));
+		if ($chunk === false || $chunk === '') {
+			return null;
+		}
+		$data .= $chunk;
+	}
+
+	return $data;
+}
+
+function pti_write_frame($out, $data)
+{
+	global $ptiToken;
+
+	fwrite($out, $ptiToken . strlen($data) . "\n" . $data);
+	fflush($out);
+}
+
+function pti_prepare_globals(array $args)
+{
+	$_SERVER['argv'] = $args;
+	$_SERVER['argc'] = count($args);
+	$GLOBALS['argv'] = $args;
+	$GLOBALS['argc'] = count($args);
+}
+
+function pti_run_forked(array $args)
+{
+	$pair = stream_socket_pair(STREAM_PF_UNIX, STREAM_SOCK_STREAM, STREAM_IPPROTO_IP);
+	if ($pair === false) {
+		return false;
+	}
+
+	$pid = pcntl_fork();
+	if ($pid === -1) {
+		fclose($pair[0]);
+		fclose($pair[1]);
+		return false;
+	}
+
+	if ($pid === 0) {
+		global $ptiIn, $ptiOut;
+
+		fclose($pair[0]);
+		fclose($ptiOut);
+		// the requests on stdin belong to the worker, the lowest free
+		// descriptor 0 is taken by /dev/null
+		fclose($ptiIn);
+		fclose(STDIN);
+		fopen('/dev/null', 'rb');
+
+		$socket = $pair[1];
+		ob_start();
+		register_shutdown_function(function () use ($socket) {
+			$output = '';
+			while (ob_get_level() > 0) {
+				$output = ob_get_clean() . $output;
+			}
+			fwrite($socket, $output);
+			fclose($socket);
+		});
+		pti_prepare_globals($args);
+		include $args[0];
+		exit(0);
+	}
+
+	fclose($pair[1]);
+	$output = stream_get_contents($pair[0]);
+	fclose($pair[0]);
+	pcntl_waitpid($pid, $status);
+
+	return $output;
+}
+
+if (!function_exists('pcntl_fork') || !function_exists('stream_socket_pair')) {
+	// running tools in-process would leak their classes into the next request
+	pti_write_frame($ptiOut, 'UNSUPPORTED');
+	exit(1);
+}
+pti_write_frame($ptiOut, 'READY');
+
+while (($ptiRequest = pti_read_frame($ptiIn)) !== null) {
+	if ($ptiRequest === 'PING') {
+		pti_write_frame($ptiOut, 'PONG');
+		continue;
+	}
+
+	$ptiOutput = pti_run_forked(explode("\0", $ptiRequest));
+	if ($ptiOutput === false) {
+		// the pool restarts the worker and retries the request
+		exit(1);
+	}
+	pti_write_frame($ptiOut, $ptiOutput);
+}
@@ -16,6 +16,19 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 import org.osgi.framework.BundleContext;
+import com.hevada.eclipse.pti.core.jobs.PHPToolScheduler;
+import com.hevada.eclipse.pti.core.launching.PHPExecutableRegistry;
+import com.hevada.eclipse.pti.core.launching.PHPToolINIFileCache;
+import com.hevada.eclipse.pti.core.launching.PHPToolLaunchConfigurationIndex;
+import com.hevada.eclipse.pti.core.launching.PHPToolLaunchPlanCache;
+import com.hevada.eclipse.pti.core.launching.PHPToolOpcache;
+import com.hevada.eclipse.pti.core.launching.PHPToolWorkerPool;
+import com.hevada.eclipse.pti.core.metrics.PHPToolMetrics;
+import com.hevada.eclipse.pti.core.php.source.PHPSourceFileCache;
+import com.hevada.eclipse.pti.core.search.PHPClassHierarchyCache;
+import com.hevada.eclipse.pti.core.search.PHPTypeIndexManager;
+import com.hevada.eclipse.pti.core.tools.PHPToolResultCache;
+import com.hevada.eclipse.pti.ui.ConsoleSink;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -54,6 +67,8 @@ public class PHPToolCorePlugin extends AbstractPHPToolPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		// listens for the preference from the start
+		PHPToolOpcache.getDefault();
 	}
 
 	protected void initializeImageRegistry(ImageRegistry registry) {
@@ -84,6 +99,19 @@ public class PHPToolCorePlugin extends AbstractPHPToolPlugin {
 	 */
 
 	public void stop(BundleContext context) throws Exception {
+		PHPToolScheduler.disposeDefault();
+		PHPToolWorkerPool.getDefault().shutdown();
+		PHPToolLaunchConfigurationIndex.disposeDefault();
+		PHPToolLaunchPlanCache.disposeDefault();
+		PHPExecutableRegistry.disposeDefault();
+		PHPToolINIFileCache.getDefault().cleanup();
+		PHPToolOpcache.disposeDefault();
+		PHPToolResultCache.getDefault().dispose();
+		PHPSourceFileCache.disposeDefault();
+		PHPClassHierarchyCache.disposeDefault();
+		PHPTypeIndexManager.disposeDefault();
+		PHPToolMetrics.disposeDefault();
+		ConsoleSink.disposeDefault();
 		plugin = null;
 		super.stop(context);
 	}
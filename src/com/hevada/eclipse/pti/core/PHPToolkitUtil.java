@@ -29,8 +29,7 @@ import org.eclipse.dltk.core.IModelElement;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.IType;
 import org.eclipse.dltk.core.ModelException;
-import org.eclipse.dltk.core.search.SearchMatch;
-import com.hevada.eclipse.pti.core.search.PHPSearchEngine;
+import com.hevada.eclipse.pti.core.search.PHPClassHierarchyCache;
 import com.hevada.eclipse.pti.ui.Logger;
 
 public class PHPToolkitUtil {
@@ -396,35 +395,18 @@ public class PHPToolkitUtil {
 	public static boolean hasSuperClass(ISourceModule module, String className) {
 		Assert.isNotNull(module);
 		Assert.isNotNull(className);
-		try {
-			IType[] types = module.getAllTypes();
-			if (types != null && types.length > 0) {
-				IType classType = getClassType(types);
-				if (classType != null) {
-					String[] classes = classType.getSuperClasses();
-					for (String c : classes) {
-						if (c.indexOf('\\') >= 0)
-							c = c.substring(c.lastIndexOf('\\') + 1);
 
-						if (c.equals(className)) {
-							return true;
-						} else {
-							SearchMatch[] matches = PHPSearchEngine.findClass(
-									c, PHPSearchEngine
-											.createProjectScope(module
-													.getScriptProject()
-													.getProject()));
-							for (SearchMatch match : matches) {
-								if (hasSuperClass(match.getResource(),
-										className))
-									return true;
-							}
-						}
-					}
-				}
-			}
-		} catch (ModelException e) {
-			Logger.logException(e);
+		String[] superClasses = getSuperClassNames(module);
+		for (String c : superClasses) {
+			if (c.equals(className))
+				return true;
+		}
+
+		IProject project = module.getScriptProject().getProject();
+		for (String c : superClasses) {
+			if (PHPClassHierarchyCache.getDefault().getSuperClasses(project, c)
+					.contains(className))
+				return true;
 		}
 
 		return false;
@@ -443,37 +425,56 @@ public class PHPToolkitUtil {
 			Pattern classNamePattern) {
 		Assert.isNotNull(module);
 		Assert.isNotNull(classNamePattern);
+
+		String[] superClasses = getSuperClassNames(module);
+		for (String c : superClasses) {
+			if (classNamePattern.matcher(c).matches())
+				return true;
+		}
+
+		IProject project = module.getScriptProject().getProject();
+		for (String c : superClasses) {
+			for (String ancestor : PHPClassHierarchyCache.getDefault()
+					.getSuperClasses(project, c)) {
+				if (classNamePattern.matcher(ancestor).matches())
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the simple names of the direct super classes of the class
+	 * declared in the given source module.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static String[] getSuperClassNames(ISourceModule module) {
+		Assert.isNotNull(module);
 		try {
 			IType[] types = module.getAllTypes();
-			if (types.length > 0) {
+			if (types != null && types.length > 0) {
 				IType classType = getClassType(types);
 				if (classType != null) {
 					String[] classes = classType.getSuperClasses();
-					for (String c : classes) {
+					if (classes == null)
+						return new String[0];
+
+					String[] names = new String[classes.length];
+					for (int i = 0; i < classes.length; ++i) {
+						String c = classes[i];
 						if (c.indexOf('\\') >= 0)
 							c = c.substring(c.lastIndexOf('\\') + 1);
-
-						if (classNamePattern.matcher(c).matches()) {
-							return true;
-						} else {
-							SearchMatch[] matches = PHPSearchEngine.findClass(
-									c, PHPSearchEngine
-											.createProjectScope(module
-													.getScriptProject()
-													.getProject()));
-							for (SearchMatch match : matches) {
-								if (hasSuperClass(match.getResource(),
-										classNamePattern))
-									return true;
-							}
-						}
+						names[i] = c;
 					}
+					return names;
 				}
 			}
 		} catch (ModelException e) {
 			Logger.logException(e);
 		}
 
-		return false;
+		return new String[0];
 	}
 }
@@ -6,12 +6,32 @@ import org.eclipse.dltk.compiler.problem.ProblemSeverity;
 public class DefaultProblem extends
 		org.eclipse.dltk.compiler.problem.DefaultProblem {
 
+	private final ProblemSeverity problemSeverity;
+	private final int problemColumn;
+
 	public DefaultProblem(String originatingFileName, String message,
 			IProblemIdentifier id, String[] stringArguments,
 			ProblemSeverity severity, int startPosition, int endPosition,
 			int line, int column) {
 		super(originatingFileName, message, id, stringArguments, severity,
 				startPosition, endPosition, line, column);
+		this.problemSeverity = severity;
+		this.problemColumn = column;
+	}
+
+	/**
+	 * @return the severity the problem was created with
+	 * @since 1.7.0
+	 */
+	public ProblemSeverity getProblemSeverity() {
+		return problemSeverity;
 	}
 
+	/**
+	 * @return the column the problem was created with
+	 * @since 1.7.0
+	 */
+	public int getProblemColumn() {
+		return problemColumn;
+	}
 }
@@ -8,15 +8,97 @@
 
 package com.hevada.eclipse.pti.core.jobs;
 
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
+/**
+ * A scheduling rule that only conflicts with itself. Rules bound to a project
+ * also conflict with every other {@link MutexRule} of the same project and
+ * with the {@link #getWorkspaceRule() workspace rule}, which in turn
+ * conflicts with all project rules. The workspace rule contains the project
+ * rules, but not the other way round, so a job holding a project rule cannot
+ * begin the workspace rule.
+ */
 public class MutexRule implements ISchedulingRule {
 
+	private static final MutexRule WORKSPACE_RULE = new MutexRule(null, true);
+
+	private final IProject project;
+	private final boolean workspace;
+
+	public MutexRule() {
+		this(null, false);
+	}
+
+	/**
+	 * @param project
+	 *            the project the rule is bound to, <code>null</code> for a rule
+	 *            that only conflicts with itself
+	 * @since 1.7.0
+	 */
+	public MutexRule(IProject project) {
+		this(project, false);
+	}
+
+	private MutexRule(IProject project, boolean workspace) {
+		this.project = project;
+		this.workspace = workspace;
+	}
+
+	/**
+	 * Returns a rule for tool jobs of the given project. Jobs of independent
+	 * projects run concurrently, jobs of the same project one after another.
+	 * 
+	 * @param project
+	 *            the project, <code>null</code> for the workspace rule
+	 * @since 1.7.0
+	 */
+	public static MutexRule getRule(IProject project) {
+		return project != null ? new MutexRule(project) : WORKSPACE_RULE;
+	}
+
+	/**
+	 * Returns the rule for tool jobs spanning the whole workspace. It
+	 * conflicts with the rules of all projects, so such a job runs alone.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static MutexRule getWorkspaceRule() {
+		return WORKSPACE_RULE;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public IProject getProject() {
+		return project;
+	}
+
 	public boolean contains(ISchedulingRule rule) {
-		return rule == this;
+		if (rule == this)
+			return true;
+		if (!(rule instanceof MutexRule))
+			return false;
+
+		MutexRule other = (MutexRule) rule;
+		if (workspace)
+			return other.project != null;
+
+		return project != null && project.equals(other.project);
 	}
 
 	public boolean isConflicting(ISchedulingRule rule) {
-		return rule == this;
+		if (rule == this)
+			return true;
+		if (!(rule instanceof MutexRule))
+			return false;
+
+		MutexRule other = (MutexRule) rule;
+		if (workspace)
+			return other.project != null;
+		if (other.workspace)
+			return project != null;
+
+		return project != null && project.equals(other.project);
 	}
 }
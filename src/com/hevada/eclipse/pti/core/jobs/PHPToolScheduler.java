@@ -0,0 +1,484 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.jobs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IEditorReference;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPartReference;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Runs tool jobs for files with a bounded concurrency. Requests are queued per
+ * file and tool: a request for a file and tool that is already waiting
+ * replaces the waiting one, and a file and tool never runs twice at the same
+ * time. At most {@link #getMaxConcurrentJobs()} jobs run at once, the file of
+ * the active editor is run first. A request whose additional rule conflicts
+ * with the rule of a job started by the scheduler waits in the queue, so it
+ * does not hold one of the concurrent slots while it could not run. A
+ * request may also supersede the running job of its file and tool, which is
+ * canceled through its progress monitor.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolScheduler {
+	private static PHPToolScheduler instance;
+
+	private final Map<RequestKey, Request> pending = new LinkedHashMap<RequestKey, Request>();
+	private final Map<RequestKey, Job> running = new HashMap<RequestKey, Job>();
+	// running jobs canceled in favor of a newer request
+	private final Set<Job> superseded = new HashSet<Job>();
+	private final ActiveEditorTracker editorTracker = new ActiveEditorTracker();
+
+	private SemaphoreRule semaphore = new SemaphoreRule(Runtime.getRuntime()
+			.availableProcessors());
+	private volatile IFile preferredFile;
+	private int coalescedCount;
+	private int droppedCount;
+
+	private static class RequestKey {
+		final IFile file;
+		final QualifiedName tool;
+
+		RequestKey(IFile file, QualifiedName tool) {
+			this.file = file;
+			this.tool = tool;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RequestKey))
+				return false;
+
+			RequestKey other = (RequestKey) obj;
+			return file.equals(other.file) && tool.equals(other.tool);
+		}
+
+		public int hashCode() {
+			return file.hashCode() * 31 + tool.hashCode();
+		}
+	}
+
+	private static class Request {
+		final RequestKey key;
+		final String name;
+		final ISchedulingRule rule;
+		final ICoreRunnable task;
+
+		Request(RequestKey key, String name, ISchedulingRule rule,
+				ICoreRunnable task) {
+			this.key = key;
+			this.name = name;
+			this.rule = rule;
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Keeps the preferred file in sync with the active editor.
+	 */
+	private class ActiveEditorTracker implements IWindowListener,
+			IPartListener2 {
+
+		void install() {
+			if (!PlatformUI.isWorkbenchRunning())
+				return;
+
+			final IWorkbench workbench = PlatformUI.getWorkbench();
+			workbench.getDisplay().asyncExec(new Runnable() {
+				public void run() {
+					workbench.addWindowListener(ActiveEditorTracker.this);
+					for (IWorkbenchWindow window : workbench
+							.getWorkbenchWindows()) {
+						windowOpened(window);
+					}
+					windowActivated(workbench.getActiveWorkbenchWindow());
+				}
+			});
+		}
+
+		void uninstall() {
+			if (!PlatformUI.isWorkbenchRunning())
+				return;
+
+			final IWorkbench workbench = PlatformUI.getWorkbench();
+			workbench.getDisplay().asyncExec(new Runnable() {
+				public void run() {
+					workbench.removeWindowListener(ActiveEditorTracker.this);
+					for (IWorkbenchWindow window : workbench
+							.getWorkbenchWindows()) {
+						windowClosed(window);
+					}
+				}
+			});
+		}
+
+		public void windowActivated(IWorkbenchWindow window) {
+			if (window == null)
+				return;
+
+			IWorkbenchPage page = window.getActivePage();
+			if (page != null)
+				editorActivated(page.getActiveEditor());
+		}
+
+		public void windowDeactivated(IWorkbenchWindow window) {
+		}
+
+		public void windowClosed(IWorkbenchWindow window) {
+			window.getPartService().removePartListener(this);
+		}
+
+		public void windowOpened(IWorkbenchWindow window) {
+			window.getPartService().addPartListener(this);
+		}
+
+		public void partActivated(IWorkbenchPartReference partRef) {
+			if (partRef instanceof IEditorReference)
+				editorActivated(((IEditorReference) partRef).getEditor(false));
+		}
+
+		public void partBroughtToTop(IWorkbenchPartReference partRef) {
+		}
+
+		public void partClosed(IWorkbenchPartReference partRef) {
+		}
+
+		public void partDeactivated(IWorkbenchPartReference partRef) {
+		}
+
+		public void partOpened(IWorkbenchPartReference partRef) {
+		}
+
+		public void partHidden(IWorkbenchPartReference partRef) {
+		}
+
+		public void partVisible(IWorkbenchPartReference partRef) {
+		}
+
+		public void partInputChanged(IWorkbenchPartReference partRef) {
+			partActivated(partRef);
+		}
+
+		private void editorActivated(IEditorPart editor) {
+			if (editor == null)
+				return;
+
+			IEditorInput input = editor.getEditorInput();
+			IFile file = input != null ? (IFile) input.getAdapter(IFile.class)
+					: null;
+			if (file != null)
+				setPreferredFile(file);
+		}
+	}
+
+	/**
+	 * Returns the shared scheduler instance
+	 * 
+	 * @return the shared scheduler instance
+	 */
+	public static synchronized PHPToolScheduler getDefault() {
+		if (instance == null) {
+			instance = new PHPToolScheduler();
+			instance.editorTracker.install();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Drops all waiting requests, cancels the running jobs and stops tracking
+	 * the active editor.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			instance.editorTracker.uninstall();
+			instance.cancelAll();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Queues a tool run for the given file.
+	 * 
+	 * @param name
+	 *            the name of the job
+	 * @param file
+	 *            the file the tool runs for
+	 * @param tool
+	 *            the tool
+	 * @param rule
+	 *            an additional rule for the job, e.g. a {@link ToolRule}, may
+	 *            be <code>null</code>
+	 * @param task
+	 *            the tool run
+	 * @return <code>true</code> if the request replaced a waiting request for
+	 *         the same file and tool
+	 */
+	public boolean schedule(String name, IFile file, QualifiedName tool,
+			ISchedulingRule rule, ICoreRunnable task) {
+		return schedule(name, file, tool, rule, task, false);
+	}
+
+	/**
+	 * Queues a tool run for the given file and optionally cancels the one
+	 * already running.
+	 * 
+	 * @param supersede
+	 *            <code>true</code> to cancel a running job of the same file and
+	 *            tool, its result is outdated by this request
+	 * @since 1.7.0
+	 */
+	public boolean schedule(String name, IFile file, QualifiedName tool,
+			ISchedulingRule rule, ICoreRunnable task, boolean supersede) {
+		Assert.isNotNull(file);
+		Assert.isNotNull(tool);
+		Assert.isNotNull(task);
+
+		RequestKey key = new RequestKey(file, tool);
+		boolean coalesced;
+		Job stale = null;
+		synchronized (this) {
+			// replacing the value keeps the place in the queue
+			coalesced = pending.put(key, new Request(key, name, rule, task)) != null;
+			if (coalesced)
+				++coalescedCount;
+
+			if (supersede) {
+				stale = running.get(key);
+				if (stale != null && superseded.add(stale))
+					++droppedCount;
+			}
+		}
+
+		if (stale != null)
+			stale.cancel();
+		dispatch();
+		return coalesced;
+	}
+
+	/**
+	 * Drops the waiting request for the given file and tool and cancels its
+	 * running job.
+	 * 
+	 * @return <code>true</code> if there was a waiting or running request
+	 */
+	public boolean cancel(IFile file, QualifiedName tool) {
+		RequestKey key = new RequestKey(file, tool);
+		Job job;
+		boolean removed;
+		synchronized (this) {
+			removed = pending.remove(key) != null;
+			job = running.get(key);
+		}
+
+		if (job != null)
+			job.cancel();
+		return removed || job != null;
+	}
+
+	/**
+	 * Drops all waiting requests and cancels all running jobs.
+	 */
+	public void cancelAll() {
+		List<Job> jobs;
+		synchronized (this) {
+			pending.clear();
+			jobs = new ArrayList<Job>(running.values());
+		}
+
+		for (Job job : jobs) {
+			job.cancel();
+		}
+	}
+
+	/**
+	 * Returns whether a request for the given file and tool is waiting.
+	 */
+	public synchronized boolean isPending(IFile file, QualifiedName tool) {
+		return pending.containsKey(new RequestKey(file, tool));
+	}
+
+	/**
+	 * Returns whether a job for the given file and tool is running.
+	 */
+	public synchronized boolean isRunning(IFile file, QualifiedName tool) {
+		return running.containsKey(new RequestKey(file, tool));
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	public synchronized int getRunningCount() {
+		return running.size();
+	}
+
+	/**
+	 * Returns the number of requests that were replaced by a newer request
+	 * before they ran.
+	 */
+	public synchronized int getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Returns the number of running jobs that were canceled because a newer
+	 * request superseded them.
+	 */
+	public synchronized int getDroppedCount() {
+		return droppedCount;
+	}
+
+	public synchronized int getMaxConcurrentJobs() {
+		return semaphore.getPermits();
+	}
+
+	/**
+	 * Sets the number of jobs running at once. Defaults to the number of
+	 * available processors. Running jobs are not affected.
+	 */
+	public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+		synchronized (this) {
+			semaphore = new SemaphoreRule(maxConcurrentJobs);
+		}
+		dispatch();
+	}
+
+	public IFile getPreferredFile() {
+		return preferredFile;
+	}
+
+	/**
+	 * Sets the file whose requests run before all others. It follows the
+	 * active editor by default.
+	 */
+	public void setPreferredFile(IFile file) {
+		preferredFile = file;
+	}
+
+	private void dispatch() {
+		List<Job> jobs = new ArrayList<Job>();
+		synchronized (this) {
+			while (!pending.isEmpty()) {
+				Request request = nextRequest();
+				if (request == null)
+					break;
+
+				ISchedulingRule permit = semaphore.acquire();
+				if (permit == null)
+					break;
+
+				pending.remove(request.key);
+				Job job = createJob(request, semaphore, permit);
+				running.put(request.key, job);
+				jobs.add(job);
+			}
+		}
+
+		for (Job job : jobs) {
+			job.schedule();
+		}
+	}
+
+	private Request nextRequest() {
+		IFile preferred = preferredFile;
+		Request first = null;
+		for (Request request : pending.values()) {
+			// the same file and tool waits until the running job is done
+			if (running.containsKey(request.key))
+				continue;
+			if (isBlocked(request.rule))
+				continue;
+			if (preferred != null && preferred.equals(request.key.file))
+				return request;
+			if (first == null)
+				first = request;
+		}
+		return first;
+	}
+
+	/**
+	 * Returns whether the given rule conflicts with the rule of a job started
+	 * by the scheduler. Its request is dispatched once that job is done.
+	 */
+	private boolean isBlocked(ISchedulingRule rule) {
+		if (rule == null)
+			return false;
+
+		for (Job job : running.values()) {
+			ISchedulingRule jobRule = job.getRule();
+			if (jobRule != null && jobRule.isConflicting(rule))
+				return true;
+		}
+		return false;
+	}
+
+	private Job createJob(final Request request,
+			final SemaphoreRule permitOwner, final ISchedulingRule permit) {
+		Job job = new Job(request.name) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					request.task.run(monitor);
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				} catch (CoreException e) {
+					return e.getStatus();
+				}
+
+				return monitor.isCanceled() ? Status.CANCEL_STATUS
+						: Status.OK_STATUS;
+			}
+		};
+		job.setRule(MultiRule.combine(permit, request.rule));
+		if (request.key.file.equals(preferredFile))
+			job.setPriority(Job.INTERACTIVE);
+		else
+			job.setPriority(Job.LONG);
+
+		job.addJobChangeListener(new JobChangeAdapter() {
+			public void done(IJobChangeEvent event) {
+				synchronized (PHPToolScheduler.this) {
+					if (running.get(request.key) == event.getJob())
+						running.remove(request.key);
+					superseded.remove(event.getJob());
+					permitOwner.release(permit);
+				}
+				dispatch();
+			}
+		});
+		return job;
+	}
+}
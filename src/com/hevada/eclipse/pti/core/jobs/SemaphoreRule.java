@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.jobs;
+
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+/**
+ * A counting semaphore for jobs. It hands out up to a fixed number of permit
+ * rules; a permit only conflicts with itself, so jobs running under different
+ * permits run concurrently while no more jobs than permits can run at once.
+ * A permit is taken with {@link #acquire()} before the job is scheduled and
+ * given back with {@link #release(ISchedulingRule)} when it is done.
+ * 
+ * @see PHPToolScheduler
+ * @since 1.7.0
+ */
+public class SemaphoreRule {
+
+	private final Permit[] permits;
+	private final boolean[] used;
+
+	private static class Permit implements ISchedulingRule {
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+	}
+
+	public SemaphoreRule(int permits) {
+		this.permits = new Permit[Math.max(1, permits)];
+		this.used = new boolean[this.permits.length];
+		for (int i = 0; i < this.permits.length; ++i) {
+			this.permits[i] = new Permit();
+		}
+	}
+
+	/**
+	 * Takes a free permit.
+	 * 
+	 * @return the permit rule or <code>null</code> if all permits are in use
+	 */
+	public synchronized ISchedulingRule acquire() {
+		for (int i = 0; i < permits.length; ++i) {
+			if (!used[i]) {
+				used[i] = true;
+				return permits[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back a permit taken by {@link #acquire()}.
+	 */
+	public synchronized void release(ISchedulingRule permit) {
+		for (int i = 0; i < permits.length; ++i) {
+			if (permits[i] == permit) {
+				used[i] = false;
+				return;
+			}
+		}
+	}
+
+	public synchronized int getAvailablePermits() {
+		int available = 0;
+		for (boolean u : used) {
+			if (!u)
+				++available;
+		}
+		return available;
+	}
+
+	public int getPermits() {
+		return permits.length;
+	}
+}
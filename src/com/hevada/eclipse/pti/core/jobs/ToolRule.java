@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.jobs;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+/**
+ * A scheduling rule that conflicts with every other {@link ToolRule} of the
+ * same tool. If it is bound to a project it only conflicts with rules of the
+ * same tool that are bound to the same project or to no project at all. A
+ * rule without a project contains the rules of its tool in all projects, a
+ * rule bound to a project only those of the same project.
+ * 
+ * @since 1.7.0
+ */
+public class ToolRule implements ISchedulingRule {
+
+	private final QualifiedName tool;
+	private final IProject project;
+
+	public ToolRule(QualifiedName tool) {
+		this(tool, null);
+	}
+
+	/**
+	 * @param tool
+	 *            the tool the rule is bound to
+	 * @param project
+	 *            the project the rule is bound to, <code>null</code> for a rule
+	 *            covering the tool in all projects
+	 */
+	public ToolRule(QualifiedName tool, IProject project) {
+		Assert.isNotNull(tool);
+		this.tool = tool;
+		this.project = project;
+	}
+
+	public QualifiedName getTool() {
+		return tool;
+	}
+
+	public IProject getProject() {
+		return project;
+	}
+
+	public boolean contains(ISchedulingRule rule) {
+		if (rule == this)
+			return true;
+		if (!(rule instanceof ToolRule))
+			return false;
+
+		ToolRule other = (ToolRule) rule;
+		return tool.equals(other.tool)
+				&& (project == null || project.equals(other.project));
+	}
+
+	public boolean isConflicting(ISchedulingRule rule) {
+		if (rule == this)
+			return true;
+		if (!(rule instanceof ToolRule))
+			return false;
+
+		ToolRule other = (ToolRule) rule;
+		return tool.equals(other.tool)
+				&& (project == null || other.project == null || project
+						.equals(other.project));
+	}
+}
@@ -10,4 +10,77 @@ package com.hevada.eclipse.pti.core.launching;
 
 public interface IPHPToolLaunchConstants {
 	public static final String ATTR_PHP_TOOL_QUALIFIED_NAME = "ATTR_PHP_TOOL_QUALIFIED_NAME"; //$NON-NLS-1$
+
+	/**
+	 * Launch attribute controlling which resources are refreshed after a tool
+	 * run, one of the <code>REFRESH_MODE_*</code> values. Defaults to
+	 * {@link #REFRESH_MODE_CONFIGURATION}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String ATTR_REFRESH_MODE = "ATTR_PHP_TOOL_REFRESH_MODE"; //$NON-NLS-1$
+
+	/**
+	 * Refreshes the resources selected by the refresh tab of the launch
+	 * configuration.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String REFRESH_MODE_CONFIGURATION = "configuration"; //$NON-NLS-1$
+
+	/**
+	 * Refreshes nothing, for tools that do not write any files.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String REFRESH_MODE_NONE = "none"; //$NON-NLS-1$
+
+	/**
+	 * Refreshes only the file the tool was launched for, for tools that change
+	 * just that file. Tools changing other files refresh nothing and report
+	 * them to {@link PHPToolLauncher#refreshResources}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String REFRESH_MODE_LAUNCHED_FILE = "launchedFile"; //$NON-NLS-1$
+
+	/**
+	 * Workspace preference enabling {@link PHPToolWorkerPool} launches by
+	 * default.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String PREF_POOLED_LAUNCH = "pooledLaunch"; //$NON-NLS-1$
+
+	/**
+	 * Workspace preference enabling the persistent
+	 * {@link com.hevada.eclipse.pti.core.tools.PHPToolResultCache}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String PREF_RESULT_CACHE = "resultCache"; //$NON-NLS-1$
+
+	/**
+	 * Workspace preference enabling the
+	 * {@link com.hevada.eclipse.pti.core.metrics.PHPToolMetrics}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String PREF_METRICS = "metrics"; //$NON-NLS-1$
+
+	/**
+	 * Workspace preference holding the seconds between two metrics summaries
+	 * written to the console, 0 for no summaries.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String PREF_METRICS_SUMMARY_INTERVAL = "metricsSummaryInterval"; //$NON-NLS-1$
+
+	/**
+	 * Workspace preference enabling the OPcache file cache of
+	 * {@link PHPToolOpcache} for tool processes.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final String PREF_OPCACHE = "opcacheFileCache"; //$NON-NLS-1$
 }
@@ -13,6 +13,15 @@ public class OperatingSystem {
 	public static final boolean LINUX = java.io.File.separatorChar == '/'; //$NON-NLS-1$
 	public static final boolean MAC = System
 			.getProperty("os.name").startsWith("Mac"); //$NON-NLS-1$
+
+	/**
+	 * A conservative limit for the length of a command line. It stays below
+	 * the limit of CreateProcess on Windows and the usual argument space on
+	 * Linux and Mac OS X.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static final int MAX_COMMAND_LINE_LENGTH = WINDOWS ? 32000 : 131072;
 	
 	public static String escapeShellArg(String arg) {
 		if (WINDOWS) {
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The version, loaded extensions and loaded php.ini of a PHP executable, as
+ * probed by the {@link PHPExecutableRegistry}.
+ * 
+ * @since 1.7.0
+ */
+public class PHPExecutableInfo {
+	/** Name of the OPcache extension as reported by PHP */
+	public static final String EXTENSION_OPCACHE = "Zend OPcache"; //$NON-NLS-1$
+	/** Name of the Xdebug extension as reported by PHP */
+	public static final String EXTENSION_XDEBUG = "Xdebug"; //$NON-NLS-1$
+
+	private final String version;
+	private final Set<String> extensions;
+	private final Set<String> lowerCaseExtensions = new LinkedHashSet<String>();
+	private final File loadedINIFile;
+
+	public PHPExecutableInfo(String version, Set<String> extensions,
+			File loadedINIFile) {
+		this.version = version;
+		this.extensions = Collections.unmodifiableSet(new LinkedHashSet<String>(
+				extensions));
+		this.loadedINIFile = loadedINIFile;
+		for (String extension : extensions) {
+			lowerCaseExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+		}
+	}
+
+	/**
+	 * Returns the version, e.g. <code>8.2.12</code>.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Compares the version with the given one like PHP's
+	 * <code>version_compare</code> does for plain numeric versions.
+	 * 
+	 * @return a negative number, zero or a positive number if the version is
+	 *         lower than, equal to or higher than <code>other</code>
+	 */
+	public int compareVersion(String other) {
+		String[] parts = version.split("[.\\-+]"); //$NON-NLS-1$
+		String[] otherParts = other.split("[.\\-+]"); //$NON-NLS-1$
+		for (int i = 0; i < Math.max(parts.length, otherParts.length); ++i) {
+			int diff = toNumber(parts, i) - toNumber(otherParts, i);
+			if (diff != 0)
+				return diff;
+		}
+		return 0;
+	}
+
+	private static int toNumber(String[] parts, int index) {
+		if (index >= parts.length)
+			return 0;
+
+		try {
+			return Integer.parseInt(parts[index]);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the names of all loaded extensions, including Zend extensions
+	 * like {@link #EXTENSION_OPCACHE}.
+	 */
+	public Set<String> getExtensions() {
+		return extensions;
+	}
+
+	/**
+	 * Returns whether the extension of the given name is loaded, ignoring
+	 * case.
+	 */
+	public boolean hasExtension(String name) {
+		return lowerCaseExtensions.contains(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Returns the php.ini PHP loaded when it was probed or <code>null</code>
+	 * if it ran without one.
+	 */
+	public File getLoadedINIFile() {
+		return loadedINIFile;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("version", version); //$NON-NLS-1$
+		json.put("extensions", new JSONArray(extensions)); //$NON-NLS-1$
+		if (loadedINIFile != null)
+			json.put("ini", loadedINIFile.getPath()); //$NON-NLS-1$
+		return json;
+	}
+
+	public static PHPExecutableInfo fromJSON(JSONObject json)
+			throws JSONException {
+		Set<String> extensions = new LinkedHashSet<String>();
+		JSONArray list = json.getJSONArray("extensions"); //$NON-NLS-1$
+		for (int i = 0; i < list.length(); ++i) {
+			extensions.add(list.getString(i));
+		}
+
+		String ini = json.optString("ini", null); //$NON-NLS-1$
+		return new PHPExecutableInfo(json.getString("version"), extensions, //$NON-NLS-1$
+				ini != null ? new File(ini) : null);
+	}
+
+	public String toString() {
+		return "PHP " + version + " " + extensions; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.php.internal.debug.core.PHPDebugPlugin;
+import org.eclipse.php.internal.debug.core.preferences.IPHPExesListener;
+import org.eclipse.php.internal.debug.core.preferences.PHPExesEvent;
+import org.eclipse.php.internal.debug.core.preferences.PHPexeItem;
+import org.eclipse.php.internal.debug.core.preferences.PHPexes;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.ui.Logger;
+
+/**
+ * Knows the configured PHP executables and what each of them offers. The
+ * executables are looked up by name without scanning {@link PHPexes} on every
+ * call. The version, extensions and loaded php.ini of an executable are
+ * probed with a single PHP run the first time they are asked for and stored
+ * in <code>&lt;state location&gt;/phpexecutables.json</code>, keyed by the
+ * executable and its php.ini. A stored result is used as long as neither file
+ * has been modified since, so later sessions do not start PHP at all.
+ * 
+ * @since 1.7.0
+ */
+public class PHPExecutableRegistry {
+	private static final String STORE_FILE = "phpexecutables.json"; //$NON-NLS-1$
+	private static final long PROBE_TIMEOUT = 10000;
+	// prints the version, the loaded php.ini and the loaded extensions, one
+	// per line; only single quotes survive the command line on Windows
+	private static final String PROBE_SCRIPT = "echo PHP_VERSION.PHP_EOL" //$NON-NLS-1$
+			+ ".php_ini_loaded_file().PHP_EOL" //$NON-NLS-1$
+			+ ".implode(',',array_merge(get_loaded_extensions(),get_loaded_extensions(true))).PHP_EOL;"; //$NON-NLS-1$
+
+	private static PHPExecutableRegistry instance;
+
+	private final File storeFile;
+	private Map<String, Entry> entries;
+	private Map<String, PHPexeItem> items;
+	private PHPexeItem defaultItem;
+	// executables that could not be probed this session, with their stamps
+	private final Set<String> failed = new HashSet<String>();
+	private final Set<PHPexeItem> pendingProbes = new LinkedHashSet<PHPexeItem>();
+	private final Job probeJob = new ProbeJob();
+
+	// executables added or removed, also before they are saved
+	private final IPHPExesListener exesListener = new IPHPExesListener() {
+		public void phpExeAdded(PHPExesEvent event) {
+			clearItems();
+		}
+
+		public void phpExeRemoved(PHPExesEvent event) {
+			clearItems();
+		}
+	};
+
+	// the default executable and edited executables, which have no event
+	private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			clearItems();
+		}
+	};
+
+	private static class Entry {
+		final long executableModified;
+		final long iniModified;
+		final PHPExecutableInfo info;
+
+		Entry(long executableModified, long iniModified, PHPExecutableInfo info) {
+			this.executableModified = executableModified;
+			this.iniModified = iniModified;
+			this.info = info;
+		}
+	}
+
+	private class ProbeJob extends Job {
+		ProbeJob() {
+			super("Probing PHP executables"); //$NON-NLS-1$
+			setSystem(true);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			PHPexeItem item;
+			boolean probed = false;
+			while ((item = nextProbe()) != null) {
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+
+				probed |= getInfo(item) != null;
+			}
+
+			// launches prepared meanwhile went without the OPcache entries
+			if (probed && PHPToolOpcache.isOpcacheEnabled())
+				PHPToolOpcache.invalidateLaunches();
+			return Status.OK_STATUS;
+		}
+	}
+
+	PHPExecutableRegistry(File storeFile) {
+		this.storeFile = storeFile;
+	}
+
+	/**
+	 * Returns the shared registry instance
+	 * 
+	 * @return the shared registry instance
+	 */
+	public static synchronized PHPExecutableRegistry getDefault() {
+		if (instance == null) {
+			File stateLocation = PHPToolCorePlugin.getDefault()
+					.getStateLocation().toFile();
+			instance = new PHPExecutableRegistry(new File(stateLocation,
+					STORE_FILE));
+			PHPexes.getInstance().addPHPExesListener(instance.exesListener);
+			InstanceScope.INSTANCE.getNode(PHPDebugPlugin.ID)
+					.addPreferenceChangeListener(instance.preferenceListener);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for changed PHP executables and pending probes.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			PHPexes.getInstance().removePHPExesListener(instance.exesListener);
+			InstanceScope.INSTANCE.getNode(PHPDebugPlugin.ID)
+					.removePreferenceChangeListener(instance.preferenceListener);
+			instance.probeJob.cancel();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the PHP executable of the given name or <code>null</code> if
+	 * there is none.
+	 */
+	public synchronized PHPexeItem getItem(String name) {
+		return getItems().get(name);
+	}
+
+	/**
+	 * Returns the default PHP executable or <code>null</code> if there is
+	 * none.
+	 */
+	public synchronized PHPexeItem getDefaultItem() {
+		getItems();
+		return defaultItem;
+	}
+
+	/**
+	 * Returns what the given executable offers, probing it if nothing is known
+	 * about the current executable and php.ini yet.
+	 * 
+	 * @return the capabilities or <code>null</code> if the executable could not
+	 *         be probed
+	 */
+	public PHPExecutableInfo getInfo(PHPexeItem item) {
+		File executable = item.getExecutable();
+		File ini = getINIFile(item);
+		String key = createKey(executable, ini);
+		long executableModified = executable.lastModified();
+		long iniModified = ini != null ? ini.lastModified() : 0;
+		String stamp = key + '\0' + executableModified + '\0' + iniModified;
+
+		synchronized (this) {
+			Entry entry = getEntries().get(key);
+			if (entry != null && entry.executableModified == executableModified
+					&& entry.iniModified == iniModified)
+				return entry.info;
+			if (failed.contains(stamp))
+				return null;
+		}
+
+		PHPExecutableInfo info = probe(executable, ini);
+
+		synchronized (this) {
+			if (info == null) {
+				failed.add(stamp);
+			} else {
+				getEntries().put(key, new Entry(executableModified,
+						iniModified, info));
+				save();
+			}
+		}
+		return info;
+	}
+
+	/**
+	 * Returns what the given executable offers if it is known already. If it
+	 * is not, <code>null</code> is returned and the executable is probed in
+	 * the background, so this never starts PHP in the calling thread.
+	 */
+	public PHPExecutableInfo getCachedInfo(PHPexeItem item) {
+		File executable = item.getExecutable();
+		File ini = getINIFile(item);
+		synchronized (this) {
+			Entry entry = getEntries().get(createKey(executable, ini));
+			if (entry != null
+					&& entry.executableModified == executable.lastModified()
+					&& entry.iniModified == (ini != null ? ini.lastModified()
+							: 0))
+				return entry.info;
+
+			if (pendingProbes.add(item))
+				probeJob.schedule();
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets all probed executables, including the stored ones.
+	 */
+	public synchronized void clear() {
+		entries = new HashMap<String, Entry>();
+		failed.clear();
+		storeFile.delete();
+		clearItems();
+	}
+
+	private synchronized void clearItems() {
+		items = null;
+		defaultItem = null;
+	}
+
+	private synchronized PHPexeItem nextProbe() {
+		if (pendingProbes.isEmpty())
+			return null;
+
+		PHPexeItem item = pendingProbes.iterator().next();
+		pendingProbes.remove(item);
+		return item;
+	}
+
+	private Map<String, PHPexeItem> getItems() {
+		if (items != null)
+			return items;
+
+		items = new HashMap<String, PHPexeItem>();
+		for (PHPexeItem item : PHPexes.getInstance().getAllItems()) {
+			items.put(item.getName(), item);
+			if (item.isDefault())
+				defaultItem = item;
+		}
+		return items;
+	}
+
+	private static File getINIFile(PHPexeItem item) {
+		File ini = item.getINILocation();
+		return ini != null && ini.isFile() ? ini : null;
+	}
+
+	private static String createKey(File executable, File ini) {
+		return executable.getAbsolutePath() + '\0'
+				+ (ini != null ? ini.getAbsolutePath() : ""); //$NON-NLS-1$
+	}
+
+	private PHPExecutableInfo probe(File executable, File ini) {
+		List<String> cmdLine = new ArrayList<String>();
+		cmdLine.add(OperatingSystem.escapePHPFileArg(executable.toString()));
+		if (ini != null) {
+			cmdLine.add("-c"); //$NON-NLS-1$
+			cmdLine.add(OperatingSystem.escapeShellFileArg(ini.toString()));
+		}
+		cmdLine.add("-r"); //$NON-NLS-1$
+		cmdLine.add(PROBE_SCRIPT);
+
+		ProcessBuilder builder = new ProcessBuilder(cmdLine);
+		builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+		String[] libraryPath = PHPToolExecutableLauncher.appendLibraryPath(
+				null, executable);
+		if (libraryPath != null) {
+			for (String variable : libraryPath) {
+				int pos = variable.indexOf('=');
+				builder.environment().put(variable.substring(0, pos),
+						variable.substring(pos + 1));
+			}
+		}
+
+		Logger.trace("Probing PHP executable " + executable); //$NON-NLS-1$
+		final Process process;
+		try {
+			process = builder.start();
+		} catch (IOException e) {
+			Logger.logException("Could not probe " + executable, e); //$NON-NLS-1$
+			return null;
+		}
+
+		// a hanging PHP must not block the caller forever
+		ScheduledFuture<?> timeout = PHPToolExecutableLauncher.CANCEL_WATCHER
+				.schedule(new Runnable() {
+					public void run() {
+						process.destroy();
+					}
+				}, PROBE_TIMEOUT, TimeUnit.MILLISECONDS);
+
+		StringBuffer output = new StringBuffer();
+		try {
+			process.getOutputStream().close();
+			Reader reader = new InputStreamReader(process.getInputStream(),
+					Charset.defaultCharset());
+			char[] buffer = new char[1024];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				output.append(buffer, 0, read);
+			}
+			if (process.waitFor() != 0)
+				return null;
+		} catch (IOException e) {
+			return null;
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			timeout.cancel(false);
+		}
+
+		String[] lines = output.toString().split("\r?\n"); //$NON-NLS-1$
+		if (lines.length < 3 || lines[0].length() == 0)
+			return null;
+
+		Set<String> extensions = new LinkedHashSet<String>();
+		for (String extension : lines[2].split(",")) { //$NON-NLS-1$
+			if (extension.length() > 0)
+				extensions.add(extension);
+		}
+		return new PHPExecutableInfo(lines[0], extensions,
+				lines[1].length() > 0 ? new File(lines[1]) : null);
+	}
+
+	private Map<String, Entry> getEntries() {
+		if (entries != null)
+			return entries;
+
+		entries = new HashMap<String, Entry>();
+		if (!storeFile.isFile())
+			return entries;
+
+		try {
+			JSONArray list = new JSONArray(new String(Files
+					.readAllBytes(storeFile.toPath()), StandardCharsets.UTF_8));
+			for (int i = 0; i < list.length(); ++i) {
+				JSONObject json = list.getJSONObject(i);
+				String ini = json.optString("ini", null); //$NON-NLS-1$
+				entries.put(createKey(new File(json.getString("executable")), //$NON-NLS-1$
+						ini != null ? new File(ini) : null), new Entry(json
+						.getLong("executableModified"), json //$NON-NLS-1$
+						.getLong("iniModified"), PHPExecutableInfo //$NON-NLS-1$
+						.fromJSON(json.getJSONObject("info")))); //$NON-NLS-1$
+			}
+		} catch (IOException e) {
+			Logger.logException(e);
+		} catch (JSONException e) {
+			// an unreadable store is probed again
+			Logger.logException(e);
+			entries.clear();
+		}
+		return entries;
+	}
+
+	private void save() {
+		try {
+			JSONArray list = new JSONArray();
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				String key = entry.getKey();
+				int pos = key.indexOf('\0');
+				JSONObject json = new JSONObject();
+				json.put("executable", key.substring(0, pos)); //$NON-NLS-1$
+				if (pos + 1 < key.length())
+					json.put("ini", key.substring(pos + 1)); //$NON-NLS-1$
+				json.put("executableModified", //$NON-NLS-1$
+						entry.getValue().executableModified);
+				json.put("iniModified", entry.getValue().iniModified); //$NON-NLS-1$
+				json.put("info", entry.getValue().info.toJSON()); //$NON-NLS-1$
+				list.put(json);
+			}
+
+			storeFile.getParentFile().mkdirs();
+			File tmpFile = new File(storeFile.getPath() + ".tmp"); //$NON-NLS-1$
+			Files.write(tmpFile.toPath(), list.toString(2).getBytes(
+					StandardCharsets.UTF_8));
+			Files.move(tmpFile.toPath(), storeFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Logger.logException(e);
+		} catch (JSONException e) {
+			Logger.logException(e);
+		}
+	}
+}
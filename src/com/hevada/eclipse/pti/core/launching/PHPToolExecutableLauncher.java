@@ -10,9 +10,17 @@ package com.hevada.eclipse.pti.core.launching;
 
 import java.io.File;
 import java.text.MessageFormat;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -22,11 +30,15 @@ import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
 import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchManager;
 import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.model.IFlushableStreamMonitor;
 import org.eclipse.debug.core.model.IProcess;
 import org.eclipse.debug.core.model.IStreamMonitor;
 import org.eclipse.debug.ui.CommonTab;
@@ -37,14 +49,32 @@ import org.eclipse.php.internal.debug.core.IPHPDebugConstants;
 import org.eclipse.php.internal.debug.core.PHPDebugCoreMessages;
 import org.eclipse.php.internal.debug.core.launching.PHPLaunch;
 import org.eclipse.php.internal.debug.core.launching.PHPLaunchUtilities;
-import org.eclipse.php.internal.debug.core.phpIni.PHPINIUtil;
 import org.eclipse.swt.widgets.Display;
 import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
 import com.hevada.eclipse.pti.core.listener.IOutputListener;
+import com.hevada.eclipse.pti.core.metrics.PHPToolMetrics;
+import com.hevada.eclipse.pti.ui.Logger;
 import org.eclipse.core.runtime.SubMonitor;
 
 public class PHPToolExecutableLauncher {
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	// one shared thread watches the monitors of all asynchronous and direct
+	// launches
+	static final ScheduledExecutorService CANCEL_WATCHER = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "PHP Tool Launch Cancel Watcher"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	protected ListenerList<IOutputListener> outputListenerList = new ListenerList<IOutputListener>();
+	/**
+	 * @since 1.7.0
+	 */
+	protected ListenerList<IOutputListener> standardOutputListenerList = new ListenerList<IOutputListener>();
 
 	public ILaunch getLaunch(ILaunchConfiguration configuration, String mode) throws CoreException {
 		return new PHPLaunch(configuration, mode, null);
@@ -61,10 +91,201 @@ public class PHPToolExecutableLauncher {
 
 	public IProcess launch(ILaunchConfiguration configuration, ILaunch launch,
 			IProgressMonitor monitor) throws CoreException {
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		String tool = getTool(configuration);
+		long start = metrics.startTimer();
+		IProcess process = startProcess(configuration, launch, monitor);
+		metrics.stopTimer(PHPToolMetrics.PROCESS_START, tool, start);
+		if (process == null)
+			return null;
+
+		if (!CommonTab.isLaunchInBackground(configuration)) {
+			// wait for process to exit
+			start = metrics.startTimer();
+			CompletableFuture<IProcess> terminated = whenTerminated(process);
+			while (!terminated.isDone()) {
+				try {
+					terminated.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					if (monitor.isCanceled()) {
+						process.terminate();
+						break;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					process.terminate();
+					break;
+				} catch (ExecutionException e) {
+					break;
+				}
+			}
+
+			metrics.stopTimer(PHPToolMetrics.PROCESS_WAIT, tool, start);
+
+			// refresh resources
+			// 10+80+10 of 100;
+			if (isRefreshEnabled(configuration)) {
+				start = metrics.startTimer();
+				SubMonitor subMonitor = SubMonitor.convert(monitor, 10);
+				RefreshTab.refreshResources(configuration, subMonitor);
+				metrics.stopTimer(PHPToolMetrics.PROCESS_REFRESH, tool, start);
+			}
+		}
+
+		return process;
+	}
+
+	/**
+	 * Launches the configuration without blocking the calling thread. The
+	 * returned future completes once the process has terminated and the
+	 * resources have been refreshed. It completes with <code>null</code> if
+	 * the launch was canceled or the configuration is invalid.
+	 * 
+	 * Canceling the monitor or the future terminates the process.
+	 * 
+	 * @since 1.7.0
+	 */
+	public CompletableFuture<IProcess> launchAsync(
+			final ILaunchConfiguration configuration,
+			final IProgressMonitor monitor) {
+		final CompletableFuture<IProcess> result = new CompletableFuture<IProcess>();
+		final PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		final String tool = getTool(configuration);
+
+		final IProcess process;
+		long start = metrics.startTimer();
+		try {
+			process = startProcess(configuration,
+					getLaunch(configuration, ILaunchManager.RUN_MODE), monitor);
+		} catch (CoreException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		metrics.stopTimer(PHPToolMetrics.PROCESS_START, tool, start);
+
+		if (process == null) {
+			result.complete(null);
+			return result;
+		}
+
+		if (CommonTab.isLaunchInBackground(configuration)) {
+			result.complete(process);
+			return result;
+		}
+
+		final ScheduledFuture<?> cancelCheck = CANCEL_WATCHER
+				.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						if (monitor.isCanceled())
+							terminate(process);
+					}
+				}, CANCEL_POLL_INTERVAL, CANCEL_POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+
+		final long waitStart = metrics.startTimer();
+		whenTerminated(process).thenRunAsync(new Runnable() {
+			public void run() {
+				metrics.stopTimer(PHPToolMetrics.PROCESS_WAIT, tool, waitStart);
+				try {
+					if (isRefreshEnabled(configuration)) {
+						long refreshStart = metrics.startTimer();
+						RefreshTab.refreshResources(configuration,
+								new NullProgressMonitor());
+						metrics.stopTimer(PHPToolMetrics.PROCESS_REFRESH, tool,
+								refreshStart);
+					}
+					result.complete(process);
+				} catch (CoreException e) {
+					result.completeExceptionally(e);
+				}
+			}
+		});
+
+		result.whenComplete(new BiConsumer<IProcess, Throwable>() {
+			public void accept(IProcess p, Throwable t) {
+				cancelCheck.cancel(false);
+				if (result.isCancelled())
+					terminate(process);
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Returns whether the resources of the refresh tab are refreshed after the
+	 * process terminated, see {@link IPHPToolLaunchConstants#ATTR_REFRESH_MODE}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static boolean isRefreshEnabled(ILaunchConfiguration configuration) {
+		try {
+			return IPHPToolLaunchConstants.REFRESH_MODE_CONFIGURATION
+					.equals(configuration.getAttribute(
+							IPHPToolLaunchConstants.ATTR_REFRESH_MODE,
+							IPHPToolLaunchConstants.REFRESH_MODE_CONFIGURATION));
+		} catch (CoreException e) {
+			return true;
+		}
+	}
+
+	private static String getTool(ILaunchConfiguration configuration) {
+		try {
+			return configuration.getAttribute(
+					IPHPToolLaunchConstants.ATTR_PHP_TOOL_QUALIFIED_NAME,
+					(String) null);
+		} catch (CoreException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a future that completes when the given process has terminated,
+	 * driven by the debug event of the process instead of polling it.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static CompletableFuture<IProcess> whenTerminated(
+			final IProcess process) {
+		final CompletableFuture<IProcess> terminated = new CompletableFuture<IProcess>();
+		final IDebugEventSetListener listener = new IDebugEventSetListener() {
+			public void handleDebugEvents(DebugEvent[] events) {
+				for (DebugEvent event : events) {
+					if (event.getSource() == process
+							&& event.getKind() == DebugEvent.TERMINATE) {
+						terminated.complete(process);
+					}
+				}
+			}
+		};
+
+		DebugPlugin.getDefault().addDebugEventListener(listener);
+		terminated.whenComplete(new BiConsumer<IProcess, Throwable>() {
+			public void accept(IProcess p, Throwable t) {
+				DebugPlugin.getDefault().removeDebugEventListener(listener);
+			}
+		});
+
+		// the process may have ended before the listener was registered
+		if (process.isTerminated())
+			terminated.complete(process);
+
+		return terminated;
+	}
+
+	private static void terminate(IProcess process) {
+		try {
+			if (!process.isTerminated())
+				process.terminate();
+		} catch (DebugException e) {
+			Logger.logException(e);
+		}
+	}
+
+	protected IProcess startProcess(ILaunchConfiguration configuration,
+			ILaunch launch, IProgressMonitor monitor) throws CoreException {
 		String phpExeString = configuration.getAttribute(
 				IPHPDebugConstants.ATTR_EXECUTABLE_LOCATION, (String) null);
-		String phpIniPath = configuration.getAttribute(
-				IPHPDebugConstants.ATTR_INI_LOCATION, (String) null);
 		String fileName = configuration.getAttribute(
 				IPHPDebugConstants.ATTR_FILE_FULL_PATH, (String) null);
 
@@ -84,73 +305,31 @@ public class PHPToolExecutableLauncher {
 
 		SubMonitor subMonitor = SubMonitor.convert(monitor, 10);
 
-		// Locate the php.ini by using the attribute. If the attribute was null,
-		// try to locate an php.ini that exists next to the executable.
-		File phpIni = (phpIniPath != null && new File(phpIniPath).exists()) ? new File(
-				phpIniPath) : PHPINIUtil.findPHPIni(phpExeString);
-		launch.setAttribute(IDebugParametersKeys.PHP_INI_LOCATION,
-				phpIni.getAbsolutePath());
+		// the php.ini, command line and environment are resolved once per
+		// configuration, only the arguments change from launch to launch
+		PHPToolLaunchPlan plan = PHPToolLaunchPlanCache.getDefault().get(
+				configuration);
+		File phpIni = plan.getPHPIni();
+		if (phpIni != null)
+			launch.setAttribute(IDebugParametersKeys.PHP_INI_LOCATION, phpIni
+					.getAbsolutePath());
 
 		// resolve location
 		IPath phpExe = new Path(phpExeString);
 
-		String[] envp = DebugPlugin.getDefault().getLaunchManager()
-				.getEnvironment(configuration);
-		File phpExeFile = new File(phpExeString);
-		String phpIniLocation = launch
-				.getAttribute(IDebugParametersKeys.PHP_INI_LOCATION);
-
-		// Determine PHP configuration file location:
-		String phpConfigDir = phpExeFile.getParent();
-		if (phpIniLocation != null && !phpIniLocation.equals("")) {
-			phpConfigDir = new File(phpIniLocation).getParent();
-		}
-
 		String[] args = PHPLaunchUtilities.getProgramArguments(launch
 				.getLaunchConfiguration());
-
-		String[] cmdLine = PHPLaunchUtilities.getCommandLine(
-				launch.getLaunchConfiguration(),
-				OperatingSystem.escapePHPFileArg(phpExeString), phpConfigDir,
-				OperatingSystem.escapeShellFileArg(fileName), args);
-
-		// remove unwanted -n argument
-		ArrayList<String> newCmdLineList = new ArrayList<String>(cmdLine.length);
-		for (int i = 0; i < cmdLine.length; ++i) {
-			if (!cmdLine[i].equals("-n"))
-				newCmdLineList.add(cmdLine[i]);
-		}
-		cmdLine = newCmdLineList.toArray(new String[0]);
+		String[] cmdLine = plan.getCommandLine(args);
 
 		notifyOutputListener(cmdLine, ' ');
 		notifyOutputListener("\n");
 
-		// Set library search path:
-		if (!OperatingSystem.WINDOWS) {
-			StringBuffer buf = new StringBuffer();
-			if (OperatingSystem.MAC) { //$NON-NLS-1$ //$NON-NLS-2$
-				buf.append("DYLD_LIBRARY_PATH"); //$NON-NLS-1$
-			} else {
-				buf.append("LD_LIBRARY_PATH"); //$NON-NLS-1$
-			}
-			buf.append('=');
-			buf.append(phpExeFile.getParent());
-			String[] envpNew = new String[envp == null ? 1 : envp.length + 1];
-			if (envp != null) {
-				System.arraycopy(envp, 0, envpNew, 0, envp.length);
-			}
-			envpNew[envpNew.length - 1] = buf.toString();
-			envp = envpNew;
-		}
-
 		if (monitor.isCanceled()) {
 			return null;
 		}
 
-		File workingDir = new File(fileName).getParentFile();
-
-		Process p = workingDir.exists() ? DebugPlugin.exec(cmdLine, workingDir,
-				envp) : DebugPlugin.exec(cmdLine, null, envp);
+		Process p = DebugPlugin.exec(cmdLine, plan.getWorkingDirectory(), plan
+				.getEnvironment());
 
 		IProcess process = null;
 
@@ -191,30 +370,66 @@ public class PHPToolExecutableLauncher {
 					.addListener(outputListener);
 			process.getStreamsProxy().getOutputStreamMonitor()
 					.addListener(outputListener);
+
+			if (!standardOutputListenerList.isEmpty())
+				attachStandardOutputListeners(process.getStreamsProxy()
+						.getOutputStreamMonitor());
 			subMonitor.done();
 		}
 		process.setAttribute(IProcess.ATTR_CMDLINE, fileName);
 
-		if (!CommonTab.isLaunchInBackground(configuration)) {
-			// wait for process to exit
-			while (!process.isTerminated()) {
-				try {
-					if (monitor.isCanceled()) {
-						process.terminate();
-						break;
-					}
-					Thread.sleep(50);
-				} catch (InterruptedException e) {
-				}
+		return process;
+	}
+
+	/**
+	 * Streams the standard output to the standard output listeners. The
+	 * monitor stops buffering the output, so it is not held in memory while
+	 * the tool runs.
+	 */
+	private void attachStandardOutputListeners(IStreamMonitor streamMonitor) {
+		IStreamListener listener = new IStreamListener() {
+			public void streamAppended(String text, IStreamMonitor monitor) {
+				notifyStandardOutputListener(text);
+			}
+		};
+
+		synchronized (streamMonitor) {
+			// output read before the listener was attached
+			String contents = streamMonitor.getContents();
+			if (streamMonitor instanceof IFlushableStreamMonitor) {
+				IFlushableStreamMonitor flushable = (IFlushableStreamMonitor) streamMonitor;
+				flushable.flushContents();
+				flushable.setBuffered(false);
 			}
+			if (contents.length() > 0)
+				notifyStandardOutputListener(contents);
 
-			// refresh resources
-			subMonitor = SubMonitor.convert(monitor, 10); // 10+80+10 of
-			// 100;
-			RefreshTab.refreshResources(configuration, subMonitor);
+			streamMonitor.addListener(listener);
 		}
+	}
 
-		return process;
+	/**
+	 * Appends the library search path of the given PHP executable to the
+	 * environment. Nothing is appended on Windows.
+	 */
+	static String[] appendLibraryPath(String[] envp, File phpExeFile) {
+		if (OperatingSystem.WINDOWS)
+			return envp;
+
+		StringBuffer buf = new StringBuffer();
+		if (OperatingSystem.MAC) { //$NON-NLS-1$ //$NON-NLS-2$
+			buf.append("DYLD_LIBRARY_PATH"); //$NON-NLS-1$
+		} else {
+			buf.append("LD_LIBRARY_PATH"); //$NON-NLS-1$
+		}
+		buf.append('=');
+		buf.append(phpExeFile.getParent());
+		String[] envpNew = new String[envp == null ? 1 : envp.length + 1];
+		if (envp != null) {
+			System.arraycopy(envp, 0, envpNew, 0, envp.length);
+		}
+		envpNew[envpNew.length - 1] = buf.toString();
+		return envpNew;
 	}
 
 	private void displayErrorMessage(final String message) {
@@ -243,6 +458,15 @@ public class PHPToolExecutableLauncher {
 		notifyOutputListener(str.toString());
 	}
 
+	/**
+	 * @since 1.7.0
+	 */
+	protected void notifyStandardOutputListener(String output) {
+		for (Object listener : standardOutputListenerList.getListeners()) {
+			((IOutputListener) listener).handleOutput(output);
+		}
+	}
+
 	public void addOutputListener(IOutputListener listener) {
 		outputListenerList.add(listener);
 	}
@@ -250,4 +474,23 @@ public class PHPToolExecutableLauncher {
 	public void removeOutputListener(IOutputListener listener) {
 		outputListenerList.remove(listener);
 	}
-}
+
+	/**
+	 * Adds a listener receiving only the standard output of the tool, chunk by
+	 * chunk while it runs. As long as such a listener is registered the
+	 * standard output is not buffered, so
+	 * {@link IStreamMonitor#getContents()} of the process stays empty.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void addStandardOutputListener(IOutputListener listener) {
+		standardOutputListenerList.add(listener);
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public void removeStandardOutputListener(IOutputListener listener) {
+		standardOutputListenerList.remove(listener);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchManager;
+import org.eclipse.php.internal.debug.core.IPHPDebugConstants;
+import com.hevada.eclipse.pti.core.IPHPCoreConstants;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.php.inifile.INIFileEntry;
+import com.hevada.eclipse.pti.ui.Logger;
+
+/**
+ * Content addressed store of generated php.ini files. Every distinct
+ * combination of base php.ini, ini entries and time zone is written once to
+ * <code>&lt;state location&gt;/phpini/&lt;hash&gt;/php.ini</code> and reused
+ * by all tools and projects. Files that were neither used during a session
+ * nor are referenced by a PHP tool launch configuration are removed by
+ * {@link #cleanup()} when the plugin stops.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolINIFileCache {
+	private static final String CACHE_DIR = "phpini"; //$NON-NLS-1$
+	private static final String INI_FILE_NAME = "php.ini"; //$NON-NLS-1$
+
+	private static PHPToolINIFileCache instance;
+
+	private final File cacheDir;
+	private final Set<String> usedKeys = new HashSet<String>();
+
+	PHPToolINIFileCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the shared cache instance
+	 * 
+	 * @return the shared cache instance
+	 */
+	public static synchronized PHPToolINIFileCache getDefault() {
+		if (instance == null) {
+			File stateLocation = PHPToolCorePlugin.getDefault()
+					.getStateLocation().toFile();
+			instance = new PHPToolINIFileCache(new File(stateLocation, CACHE_DIR));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates the key of a generated php.ini file.
+	 * 
+	 * @param baseINIFile
+	 *            the php.ini the file is derived from, may be <code>null</code>
+	 * @param entries
+	 *            the entries applied to the base file, may be <code>null</code>
+	 * @param timeZone
+	 *            the time zone written to <code>date.timezone</code>
+	 */
+	public String createKey(File baseINIFile, INIFileEntry[] entries,
+			String timeZone) {
+		StringBuffer key = new StringBuffer();
+		if (baseINIFile != null) {
+			key.append(baseINIFile.getAbsolutePath()).append('\0');
+			key.append(baseINIFile.lastModified()).append('\0');
+			key.append(baseINIFile.length()).append('\0');
+		}
+		key.append(timeZone).append('\0');
+
+		if (entries != null) {
+			for (INIFileEntry entry : sortEntries(entries)) {
+				key.append(entry.getSection()).append('\0');
+				key.append(entry.getName()).append('\0');
+				key.append(entry.getValue()).append('\0');
+				key.append(entry.isAdditional()).append('\0');
+			}
+		}
+
+		return toHex(createDigest().digest(
+				key.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Orders the entries by name. Entries with different names do not affect
+	 * each other, entries with the same name keep their relative order, so
+	 * applying the sorted entries gives the same result as the original ones.
+	 */
+	public static INIFileEntry[] sortEntries(INIFileEntry[] entries) {
+		INIFileEntry[] sorted = entries.clone();
+		Arrays.sort(sorted, new Comparator<INIFileEntry>() {
+			public int compare(INIFileEntry e1, INIFileEntry e2) {
+				return e1.getName().compareTo(e2.getName());
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Returns the php.ini file stored for the given key or <code>null</code>
+	 * if it has not been generated yet.
+	 */
+	public synchronized File get(String key) {
+		File iniFile = new File(new File(cacheDir, key), INI_FILE_NAME);
+		if (!iniFile.isFile())
+			return null;
+
+		usedKeys.add(key);
+		return iniFile;
+	}
+
+	/**
+	 * Moves a freshly generated php.ini file into the store. The temporary
+	 * directory the file was generated in is removed if it is empty then.
+	 * 
+	 * @return the stored file, or <code>generated</code> itself if it could
+	 *         not be stored
+	 */
+	public synchronized File put(String key, File generated) {
+		File dir = new File(cacheDir, key);
+		File iniFile = new File(dir, INI_FILE_NAME);
+		try {
+			dir.mkdirs();
+			File tmpFile = new File(dir, INI_FILE_NAME + ".tmp"); //$NON-NLS-1$
+			Files.copy(generated.toPath(), tmpFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmpFile.toPath(), iniFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Logger.logException(e);
+			return generated;
+		}
+
+		generated.delete();
+		// PHPINIUtil creates a temporary directory for every php.ini, this
+		// only succeeds if nothing else is in there
+		File generatedDir = generated.getParentFile();
+		if (generatedDir != null)
+			generatedDir.delete();
+		usedKeys.add(key);
+		return iniFile;
+	}
+
+	/**
+	 * Removes all php.ini files that have not been used since the plugin was
+	 * started, except the ones of saved launch configurations. These are
+	 * reused without going through the cache in the next session.
+	 */
+	public synchronized void cleanup() {
+		File[] dirs = cacheDir.listFiles();
+		if (dirs == null)
+			return;
+
+		Set<String> keys = new HashSet<String>(usedKeys);
+		addConfigurationKeys(keys);
+		for (File dir : dirs) {
+			if (keys.contains(dir.getName()))
+				continue;
+
+			File[] files = dir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Adds the keys of the php.ini files the PHP tool launch configurations
+	 * point to.
+	 */
+	private void addConfigurationKeys(Set<String> keys) {
+		ILaunchManager manager = DebugPlugin.getDefault().getLaunchManager();
+		try {
+			ILaunchConfiguration[] configs = manager
+					.getLaunchConfigurations(manager
+							.getLaunchConfigurationType(IPHPCoreConstants.LaunchType));
+			for (ILaunchConfiguration config : configs) {
+				if (!config.getAttribute(PHPToolCorePlugin.PLUGIN_ID, false))
+					continue;
+
+				String iniLocation = config.getAttribute(
+						IPHPDebugConstants.ATTR_INI_LOCATION, (String) null);
+				if (iniLocation == null)
+					continue;
+
+				File dir = new File(iniLocation).getParentFile();
+				if (dir != null && cacheDir.equals(dir.getParentFile()))
+					keys.add(dir.getName());
+			}
+		} catch (CoreException e) {
+			Logger.logException(e);
+		}
+	}
+
+	/**
+	 * Returns the digest the caches of the PHP tools hash their keys with.
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the given digest as lower case hex string.
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuffer hex = new StringBuffer(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
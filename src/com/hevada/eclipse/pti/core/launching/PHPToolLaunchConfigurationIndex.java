@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchConfigurationListener;
+import org.eclipse.debug.core.ILaunchConfigurationType;
+import org.eclipse.debug.core.ILaunchManager;
+import org.eclipse.php.internal.debug.core.IPHPDebugConstants;
+import com.hevada.eclipse.pti.core.IPHPCoreConstants;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.ui.Logger;
+
+/**
+ * In-memory index of the PHP tool launch configurations, keyed by script,
+ * PHP executable and tool. The index is built on first use and kept up to
+ * date through an {@link ILaunchConfigurationListener}, so looking up a
+ * configuration does not scan and read all configurations from disk.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolLaunchConfigurationIndex implements
+		ILaunchConfigurationListener {
+
+	private static PHPToolLaunchConfigurationIndex instance;
+
+	private Map<String, ILaunchConfiguration> configurations;
+	private final Map<ILaunchConfiguration, String> keys = new HashMap<ILaunchConfiguration, String>();
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Returns the shared index instance
+	 * 
+	 * @return the shared index instance
+	 */
+	public static synchronized PHPToolLaunchConfigurationIndex getDefault() {
+		if (instance == null)
+			instance = new PHPToolLaunchConfigurationIndex();
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for launch configuration changes.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			DebugPlugin.getDefault().getLaunchManager()
+					.removeLaunchConfigurationListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the configuration for the given script, executable and tool or
+	 * <code>null</code> if there is none.
+	 */
+	public synchronized ILaunchConfiguration find(String phpScript,
+			String phpExe, String tool) {
+		return getConfigurations().get(createKey(phpScript, phpExe, tool));
+	}
+
+	/**
+	 * Returns the lock guarding the lookup and creation of the configuration
+	 * for the given script, executable and tool, so concurrent launches do
+	 * not each create a configuration of their own.
+	 */
+	public Object getLock(String phpScript, String phpExe, String tool) {
+		String key = createKey(phpScript, phpExe, tool);
+		Object lock = locks.get(key);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = locks.putIfAbsent(key, newLock);
+			if (lock == null)
+				lock = newLock;
+		}
+		return lock;
+	}
+
+	/**
+	 * Adds a configuration that has just been saved, without waiting for the
+	 * launch manager notification.
+	 */
+	public synchronized void register(ILaunchConfiguration configuration) {
+		if (configurations != null)
+			add(configuration);
+	}
+
+	public synchronized void launchConfigurationAdded(
+			ILaunchConfiguration configuration) {
+		if (configurations != null)
+			add(configuration);
+	}
+
+	public synchronized void launchConfigurationChanged(
+			ILaunchConfiguration configuration) {
+		if (configurations != null && !configuration.isWorkingCopy()) {
+			remove(configuration);
+			add(configuration);
+		}
+	}
+
+	public synchronized void launchConfigurationRemoved(
+			ILaunchConfiguration configuration) {
+		if (configurations != null)
+			remove(configuration);
+	}
+
+	private Map<String, ILaunchConfiguration> getConfigurations() {
+		if (configurations != null)
+			return configurations;
+
+		configurations = new HashMap<String, ILaunchConfiguration>();
+		ILaunchManager manager = DebugPlugin.getDefault().getLaunchManager();
+		manager.addLaunchConfigurationListener(this);
+
+		ILaunchConfigurationType configType = manager
+				.getLaunchConfigurationType(IPHPCoreConstants.LaunchType);
+		try {
+			ILaunchConfiguration[] configs = manager
+					.getLaunchConfigurations(configType);
+			if (configs != null) {
+				for (ILaunchConfiguration config : configs) {
+					add(config);
+				}
+			}
+		} catch (CoreException e) {
+			Logger.logException(e);
+		}
+
+		return configurations;
+	}
+
+	private void add(ILaunchConfiguration configuration) {
+		if (configuration.isWorkingCopy())
+			return;
+
+		try {
+			if (!configuration.getAttribute(PHPToolCorePlugin.PLUGIN_ID, false))
+				return;
+
+			String key = createKey(configuration.getAttribute(
+					IPHPDebugConstants.ATTR_FILE, (String) null), configuration
+					.getAttribute(IPHPDebugConstants.ATTR_EXECUTABLE_LOCATION,
+							(String) null), configuration.getAttribute(
+					IPHPToolLaunchConstants.ATTR_PHP_TOOL_QUALIFIED_NAME,
+					(String) null));
+
+			configurations.put(key, configuration);
+			keys.put(configuration, key);
+		} catch (CoreException e) {
+			// not readable (e.g. already deleted), nothing to index
+		}
+	}
+
+	private void remove(ILaunchConfiguration configuration) {
+		String key = keys.remove(configuration);
+		if (key != null && configuration.equals(configurations.get(key)))
+			configurations.remove(key);
+	}
+
+	private static String createKey(String phpScript, String phpExe,
+			String tool) {
+		return phpScript + '\0' + phpExe + '\0' + tool;
+	}
+}
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.php.internal.debug.core.IPHPDebugConstants;
+import org.eclipse.php.internal.debug.core.launching.PHPLaunchUtilities;
+import org.eclipse.php.internal.debug.core.phpIni.PHPINIUtil;
+
+/**
+ * The resolved, launch independent part of running a PHP tool: the command
+ * line up to the tool arguments, the environment and the working directory.
+ * A plan is built once and shared through the {@link PHPToolLaunchPlanCache},
+ * a launch only appends its arguments with {@link #getCommandLine(String[])}.
+ * 
+ * Plans are immutable; the arrays returned must not be modified.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolLaunchPlan {
+	private static final String[] NO_ARGUMENTS = new String[0];
+
+	private final QualifiedName tool;
+	private final File phpExe;
+	private final File phpIni;
+	private final String[] commandLine;
+	private final String[] configuredEnvironment;
+	private final String[] environment;
+	private final File workingDir;
+	// the plan is outdated once one of these files changed
+	private final File[] dependencies;
+	private final long[] timestamps;
+
+	PHPToolLaunchPlan(QualifiedName tool, File phpExe, File phpIni,
+			String[] commandLine, String[] configuredEnvironment,
+			File workingDir, File[] dependencies) {
+		this.tool = tool;
+		this.phpExe = phpExe;
+		this.phpIni = phpIni;
+		this.commandLine = commandLine;
+		this.configuredEnvironment = configuredEnvironment;
+		this.environment = PHPToolExecutableLauncher.appendLibraryPath(
+				configuredEnvironment, phpExe);
+		this.workingDir = workingDir;
+		this.dependencies = dependencies;
+		this.timestamps = new long[dependencies.length];
+		for (int i = 0; i < dependencies.length; ++i) {
+			timestamps[i] = dependencies[i].lastModified();
+		}
+	}
+
+	/**
+	 * Creates the plan of a PHP tool launch configuration, resolved the same
+	 * way as {@link PHPToolExecutableLauncher} did for every launch.
+	 */
+	public static PHPToolLaunchPlan create(ILaunchConfiguration configuration)
+			throws CoreException {
+		String phpExeString = configuration.getAttribute(
+				IPHPDebugConstants.ATTR_EXECUTABLE_LOCATION, (String) null);
+		String phpIniPath = configuration.getAttribute(
+				IPHPDebugConstants.ATTR_INI_LOCATION, (String) null);
+		String fileName = configuration.getAttribute(
+				IPHPDebugConstants.ATTR_FILE_FULL_PATH, (String) null);
+		String toolName = configuration.getAttribute(
+				IPHPToolLaunchConstants.ATTR_PHP_TOOL_QUALIFIED_NAME,
+				(String) null);
+
+		// Locate the php.ini by using the attribute. If the attribute was
+		// null, try to locate an php.ini that exists next to the executable.
+		File phpExe = new File(phpExeString);
+		File phpIni = (phpIniPath != null && new File(phpIniPath).exists()) ? new File(
+				phpIniPath) : PHPINIUtil.findPHPIni(phpExeString);
+
+		// Determine PHP configuration file location:
+		String phpConfigDir = phpIni != null ? phpIni.getParent() : phpExe
+				.getParent();
+
+		String[] cmdLine = PHPLaunchUtilities.getCommandLine(configuration,
+				OperatingSystem.escapePHPFileArg(phpExeString), phpConfigDir,
+				OperatingSystem.escapeShellFileArg(fileName), NO_ARGUMENTS);
+
+		// remove unwanted -n argument
+		ArrayList<String> newCmdLineList = new ArrayList<String>(cmdLine.length);
+		for (int i = 0; i < cmdLine.length; ++i) {
+			if (!cmdLine[i].equals("-n"))
+				newCmdLineList.add(cmdLine[i]);
+		}
+
+		String[] envp = DebugPlugin.getDefault().getLaunchManager()
+				.getEnvironment(configuration);
+
+		File workingDir = fileName != null ? new File(fileName)
+				.getParentFile() : null;
+
+		return new PHPToolLaunchPlan(toQualifiedName(toolName), phpExe,
+				phpIni, newCmdLineList.toArray(new String[0]), envp,
+				workingDir, getDependencies(phpExe, phpIni, null));
+	}
+
+	/**
+	 * Creates the plan of running a script without a launch configuration.
+	 * 
+	 * @param phpIni
+	 *            the php.ini to use, <code>null</code> to let PHP look it up
+	 * @param baseINIFile
+	 *            the php.ini <code>phpIni</code> was derived from, may be
+	 *            <code>null</code>
+	 */
+	public static PHPToolLaunchPlan create(QualifiedName tool, File phpExe,
+			File phpIni, File baseINIFile, IPath phpScript) {
+		ArrayList<String> cmdLine = new ArrayList<String>(4);
+		cmdLine.add(OperatingSystem.escapePHPFileArg(phpExe.toString()));
+		if (phpIni != null) {
+			// like the launch delegate, point PHP to the folder of the php.ini
+			cmdLine.add("-c"); //$NON-NLS-1$
+			cmdLine.add(OperatingSystem.escapeShellFileArg(phpIni.getParent()));
+		}
+		cmdLine.add(OperatingSystem.escapeShellFileArg(phpScript.toOSString()));
+
+		return new PHPToolLaunchPlan(tool, phpExe, phpIni, cmdLine
+				.toArray(new String[cmdLine.size()]), null, phpScript.toFile()
+				.getParentFile(), getDependencies(phpExe, phpIni, baseINIFile));
+	}
+
+	private static File[] getDependencies(File phpExe, File phpIni,
+			File baseINIFile) {
+		ArrayList<File> dependencies = new ArrayList<File>(3);
+		dependencies.add(phpExe);
+		if (phpIni != null)
+			dependencies.add(phpIni);
+		if (baseINIFile != null && !baseINIFile.equals(phpIni))
+			dependencies.add(baseINIFile);
+		return dependencies.toArray(new File[dependencies.size()]);
+	}
+
+	private static QualifiedName toQualifiedName(String toolName) {
+		if (toolName == null)
+			return null;
+
+		int pos = toolName.lastIndexOf(':');
+		return pos != -1 ? new QualifiedName(toolName.substring(0, pos),
+				toolName.substring(pos + 1)) : new QualifiedName(null, toolName);
+	}
+
+	/**
+	 * Returns the command line running the tool with the given arguments.
+	 */
+	public String[] getCommandLine(String[] args) {
+		if (args == null || args.length == 0)
+			return commandLine.clone();
+
+		String[] cmdLine = new String[commandLine.length + args.length];
+		System.arraycopy(commandLine, 0, cmdLine, 0, commandLine.length);
+		System.arraycopy(args, 0, cmdLine, commandLine.length, args.length);
+		return cmdLine;
+	}
+
+	/**
+	 * Returns the environment for {@link DebugPlugin#exec}, including the
+	 * library search path of the PHP executable.
+	 */
+	public String[] getEnvironment() {
+		return environment;
+	}
+
+	/**
+	 * Returns the environment of the launch configuration without the library
+	 * search path, <code>null</code> if it inherits the environment of the
+	 * workbench.
+	 */
+	public String[] getConfiguredEnvironment() {
+		return configuredEnvironment;
+	}
+
+	/**
+	 * Returns the working directory or <code>null</code> if it does not exist
+	 * (anymore).
+	 */
+	public File getWorkingDirectory() {
+		return workingDir != null && workingDir.exists() ? workingDir : null;
+	}
+
+	/**
+	 * Returns the tool the plan was built for, may be <code>null</code>.
+	 */
+	public QualifiedName getTool() {
+		return tool;
+	}
+
+	public File getPHPExecutable() {
+		return phpExe;
+	}
+
+	/**
+	 * Returns the php.ini used, may be <code>null</code>.
+	 */
+	public File getPHPIni() {
+		return phpIni;
+	}
+
+	/**
+	 * Returns whether the PHP executable and php.ini files the plan was built
+	 * from are unchanged.
+	 */
+	public boolean isUpToDate() {
+		for (int i = 0; i < dependencies.length; ++i) {
+			if (dependencies[i].lastModified() != timestamps[i])
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchConfigurationListener;
+import org.eclipse.debug.core.ILaunchConfigurationWorkingCopy;
+import org.eclipse.php.internal.debug.core.PHPDebugPlugin;
+import com.hevada.eclipse.pti.core.php.inifile.INIFileEntry;
+
+/**
+ * Keeps the {@link PHPToolLaunchPlan}s of all launch configurations and
+ * launchers, so the php.ini, command line and environment are resolved once
+ * instead of on every launch. A plan is dropped when
+ * <ul>
+ * <li>its launch configuration changed or was removed,</li>
+ * <li>a preference of its tool changed,</li>
+ * <li>the PHP executables changed, i.e. a preference of the PHP debug plugin,
+ * </li>
+ * <li>its PHP executable or php.ini files changed on disk.</li>
+ * </ul>
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolLaunchPlanCache implements ILaunchConfigurationListener {
+
+	private static PHPToolLaunchPlanCache instance;
+
+	private final Map<ILaunchConfiguration, PHPToolLaunchPlan> configurationPlans = new HashMap<ILaunchConfiguration, PHPToolLaunchPlan>();
+	private final Map<String, PHPToolLaunchPlan> plans = new HashMap<String, PHPToolLaunchPlan>();
+	private final Set<String> watchedNodes = new HashSet<String>();
+
+	private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			String node = event.getNode().name();
+			if (PHPDebugPlugin.ID.equals(node))
+				clear();
+			else
+				invalidate(node);
+		}
+	};
+
+	PHPToolLaunchPlanCache() {
+		DebugPlugin.getDefault().getLaunchManager()
+				.addLaunchConfigurationListener(this);
+		watch(PHPDebugPlugin.ID);
+	}
+
+	/**
+	 * Returns the shared cache instance
+	 * 
+	 * @return the shared cache instance
+	 */
+	public static synchronized PHPToolLaunchPlanCache getDefault() {
+		if (instance == null)
+			instance = new PHPToolLaunchPlanCache();
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for changes and drops all plans.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			DebugPlugin.getDefault().getLaunchManager()
+					.removeLaunchConfigurationListener(instance);
+			synchronized (instance) {
+				for (String node : instance.watchedNodes) {
+					InstanceScope.INSTANCE.getNode(node)
+							.removePreferenceChangeListener(
+									instance.preferenceListener);
+				}
+				instance.watchedNodes.clear();
+				instance.clear();
+			}
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the plan of the given launch configuration, building it if
+	 * necessary. A working copy shares the plan of its original, it may only
+	 * differ in attributes that are not part of the plan, like the program
+	 * arguments.
+	 */
+	public synchronized PHPToolLaunchPlan get(ILaunchConfiguration configuration)
+			throws CoreException {
+		ILaunchConfiguration key = configuration;
+		if (configuration.isWorkingCopy()) {
+			ILaunchConfiguration original = ((ILaunchConfigurationWorkingCopy) configuration)
+					.getOriginal();
+			// a new configuration not saved yet is not worth caching
+			if (original == null)
+				return PHPToolLaunchPlan.create(configuration);
+			key = original;
+		}
+
+		PHPToolLaunchPlan plan = configurationPlans.get(key);
+		if (plan != null && plan.isUpToDate())
+			return plan;
+
+		plan = PHPToolLaunchPlan.create(configuration);
+		configurationPlans.put(key, plan);
+		watch(plan.getTool());
+		return plan;
+	}
+
+	/**
+	 * Creates the key of a plan that is not bound to a launch configuration.
+	 */
+	public String createKey(QualifiedName tool, File phpExe, IPath phpScript,
+			INIFileEntry[] iniEntries, String timeZone) {
+		return tool + "\0" + phpExe + '\0' + phpScript.toOSString() + '\0' //$NON-NLS-1$
+				+ PHPToolINIFileCache.getDefault().createKey(null, iniEntries,
+						timeZone);
+	}
+
+	/**
+	 * Returns the plan stored for the given key or <code>null</code> if there
+	 * is none or it is outdated.
+	 */
+	public synchronized PHPToolLaunchPlan get(String key) {
+		PHPToolLaunchPlan plan = plans.get(key);
+		if (plan != null && !plan.isUpToDate()) {
+			plans.remove(key);
+			return null;
+		}
+		return plan;
+	}
+
+	public synchronized void put(String key, PHPToolLaunchPlan plan) {
+		plans.put(key, plan);
+		watch(plan.getTool());
+	}
+
+	public synchronized void clear() {
+		configurationPlans.clear();
+		plans.clear();
+	}
+
+	public void launchConfigurationAdded(ILaunchConfiguration configuration) {
+	}
+
+	public synchronized void launchConfigurationChanged(
+			ILaunchConfiguration configuration) {
+		if (!configuration.isWorkingCopy())
+			configurationPlans.remove(configuration);
+	}
+
+	public synchronized void launchConfigurationRemoved(
+			ILaunchConfiguration configuration) {
+		configurationPlans.remove(configuration);
+	}
+
+	private synchronized void invalidate(String qualifier) {
+		invalidate(configurationPlans.values().iterator(), qualifier);
+		invalidate(plans.values().iterator(), qualifier);
+	}
+
+	private static void invalidate(Iterator<PHPToolLaunchPlan> it,
+			String qualifier) {
+		while (it.hasNext()) {
+			QualifiedName tool = it.next().getTool();
+			if (tool == null || qualifier.equals(tool.getQualifier()))
+				it.remove();
+		}
+	}
+
+	private void watch(QualifiedName tool) {
+		if (tool != null && tool.getQualifier() != null)
+			watch(tool.getQualifier());
+	}
+
+	private void watch(String node) {
+		if (watchedNodes.add(node))
+			InstanceScope.INSTANCE.getNode(node).addPreferenceChangeListener(
+					preferenceListener);
+	}
+}
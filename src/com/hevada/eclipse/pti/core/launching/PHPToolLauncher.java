@@ -10,18 +10,26 @@ package com.hevada.eclipse.pti.core.launching;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.ILaunchConfigurationType;
@@ -43,14 +51,25 @@ import org.eclipse.swt.widgets.Display;
 import com.hevada.eclipse.pti.core.IPHPCoreConstants;
 import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
 import com.hevada.eclipse.pti.core.listener.IOutputListener;
+import com.hevada.eclipse.pti.core.metrics.PHPToolMetrics;
 import com.hevada.eclipse.pti.core.php.inifile.INIFileEntry;
 import com.hevada.eclipse.pti.core.php.inifile.INIFileModifier;
 import com.hevada.eclipse.pti.ui.Logger;
 
-public class PHPToolLauncher {
+public class PHPToolLauncher implements Cloneable {
 
 	public final static String COMMANDLINE_PLACEHOLDER_FILE = "%file%"; //$NON-NLS-1$
 	public final static String COMMANDLINE_PLACEHOLDER_FOLDER = "%folder%"; //$NON-NLS-1$
+	/**
+	 * Replaced by all files of a batch launch, see
+	 * {@link #launch(Collection, IProgressMonitor)}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public final static String COMMANDLINE_PLACEHOLDER_FILES = "%files%"; //$NON-NLS-1$
+
+	// room left on the command line for the php.ini option and the like
+	private static final int COMMAND_LINE_RESERVE = 1024;
 
 	private final QualifiedName tool;
 	private final PHPexeItem phpExe;
@@ -58,8 +77,11 @@ public class PHPToolLauncher {
 	private final INIFileEntry[] iniEntries;
 	private String commandLineArgs;
 	private boolean printOutput = false;
+	private boolean pooled = PHPToolWorkerPool.isPooledLaunchEnabled();
+	private boolean direct = false;
+	private String refreshMode = IPHPToolLaunchConstants.REFRESH_MODE_CONFIGURATION;
 	private Hashtable<String, String> attributes = new Hashtable<String, String>();
-	private final PHPToolExecutableLauncher phpLauncher;
+	private PHPToolExecutableLauncher phpLauncher;
 	private IOutputListener outputListener = new IOutputListener() {
 		public void handleOutput(String output) {
 			Logger.logToConsoleWithoutBreak(output);
@@ -100,16 +122,149 @@ public class PHPToolLauncher {
 		phpLauncher = new PHPToolExecutableLauncher();
 	}
 
+	/**
+	 * Returns a launcher of the same class with the settings and output
+	 * listeners of this one. Changing options or listeners of the copy leaves
+	 * this launcher untouched, so concurrent launches of a tool can each use
+	 * their own copy. Subclasses holding mutable state of their own should
+	 * extend this method to copy it.
+	 * 
+	 * @since 1.7.0
+	 */
+	public PHPToolLauncher copy() {
+		PHPToolLauncher copy;
+		try {
+			copy = (PHPToolLauncher) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+
+		copy.attributes = new Hashtable<String, String>(attributes);
+		copy.phpLauncher = new PHPToolExecutableLauncher();
+		for (Object listener : phpLauncher.outputListenerList.getListeners()) {
+			copy.phpLauncher.addOutputListener((IOutputListener) listener);
+		}
+		for (Object listener : phpLauncher.standardOutputListenerList
+				.getListeners()) {
+			copy.phpLauncher
+					.addStandardOutputListener((IOutputListener) listener);
+		}
+		return copy;
+	}
+
 	public String launch(IFile file) {
-		String phpFileLocation = null;
-		IPath location = file.getLocation();
-		if (location != null) {
-			phpFileLocation = location.toOSString();
-		} else {
-			phpFileLocation = file.getFullPath().toString();
+		return launch(file, null);
+	}
+
+	/**
+	 * Launches the tool for the given file. Canceling <code>monitor</code>
+	 * terminates the running tool.
+	 * 
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @since 1.7.0
+	 */
+	public String launch(IFile file, IProgressMonitor monitor) {
+		String output = launch(file.getProject(), getFileLocation(file),
+				monitor);
+		if (IPHPToolLaunchConstants.REFRESH_MODE_LAUNCHED_FILE
+				.equals(refreshMode))
+			refreshResources(Collections.singleton(file), monitor);
+
+		return output;
+	}
+
+	/**
+	 * Launches the tool once for all given files. The
+	 * {@link #COMMANDLINE_PLACEHOLDER_FILES} placeholder is replaced by all
+	 * files, {@link #COMMANDLINE_PLACEHOLDER_FILE} and
+	 * {@link #COMMANDLINE_PLACEHOLDER_FOLDER} by the first one. The files
+	 * should be split with {@link #createBatches(Collection, int)} to keep
+	 * the command line short enough.
+	 * 
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @since 1.7.0
+	 */
+	public String launch(Collection<IFile> files, IProgressMonitor monitor) {
+		Assert.isLegal(!files.isEmpty());
+
+		String[] locations = new String[files.size()];
+		int i = 0;
+		for (IFile file : files) {
+			locations[i++] = getFileLocation(file);
+		}
+
+		String output = launch(files.iterator().next().getProject(),
+				locations, monitor);
+		if (IPHPToolLaunchConstants.REFRESH_MODE_LAUNCHED_FILE
+				.equals(refreshMode))
+			refreshResources(files, monitor);
+
+		return output;
+	}
+
+	/**
+	 * Splits the given files into batches for
+	 * {@link #launch(Collection, IProgressMonitor)}, keeping the command line
+	 * of each batch below {@link OperatingSystem#MAX_COMMAND_LINE_LENGTH}. If
+	 * the command line has no {@link #COMMANDLINE_PLACEHOLDER_FILES}
+	 * placeholder, each file gets a batch of its own.
+	 * 
+	 * @param maxFiles
+	 *            the maximum number of files per batch
+	 * @return the batches, in the iteration order of <code>files</code>
+	 * @since 1.7.0
+	 */
+	public List<List<IFile>> createBatches(Collection<IFile> files,
+			int maxFiles) {
+		if (!isBatchLaunchSupported())
+			maxFiles = 1;
+
+		int available = OperatingSystem.MAX_COMMAND_LINE_LENGTH
+				- COMMAND_LINE_RESERVE - commandLineArgs.length()
+				- phpScript.toOSString().length();
+		if (phpExe != null)
+			available -= phpExe.getExecutable().toString().length();
+
+		List<List<IFile>> batches = new ArrayList<List<IFile>>();
+		List<IFile> batch = new ArrayList<IFile>();
+		int length = 0;
+		for (IFile file : files) {
+			int fileLength = OperatingSystem.escapeShellFileArg(
+					getFileLocation(file)).length() + 1;
+			if (!batch.isEmpty()
+					&& (batch.size() >= maxFiles || length + fileLength > available)) {
+				batches.add(batch);
+				batch = new ArrayList<IFile>();
+				length = 0;
+			}
+			batch.add(file);
+			length += fileLength;
 		}
+		if (!batch.isEmpty())
+			batches.add(batch);
+
+		return batches;
+	}
+
+	/**
+	 * Returns whether the command line has a
+	 * {@link #COMMANDLINE_PLACEHOLDER_FILES} placeholder, i.e. whether the
+	 * tool accepts many files per launch.
+	 * 
+	 * @since 1.7.0
+	 */
+	public boolean isBatchLaunchSupported() {
+		return commandLineArgs.contains(COMMANDLINE_PLACEHOLDER_FILES);
+	}
 
-		return launch(file.getProject(), phpFileLocation);
+	private static String getFileLocation(IFile file) {
+		IPath location = file.getLocation();
+		if (location != null)
+			return location.toOSString();
+		else
+			return file.getFullPath().toString();
 	}
 
 	public String launch(IProject project) {
@@ -120,49 +275,115 @@ public class PHPToolLauncher {
 		phpLauncher.addOutputListener(listener);
 	}
 
+	/**
+	 * Adds a listener receiving the standard output of the tool while it runs.
+	 * While such a listener is registered, the output is not buffered and the
+	 * launch methods may return an empty string.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void addStandardOutputListener(IOutputListener listener) {
+		phpLauncher.addStandardOutputListener(listener);
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public void removeStandardOutputListener(IOutputListener listener) {
+		phpLauncher.removeStandardOutputListener(listener);
+	}
+
 	protected String launch(IProject project, String phpFileLocation) {
+		return launch(project, phpFileLocation, null);
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	protected String launch(IProject project, String phpFileLocation,
+			IProgressMonitor monitor) {
+		String[] phpFileLocations = phpFileLocation != null ? new String[] { phpFileLocation }
+				: null;
+		return launch(project, phpFileLocations, monitor);
+	}
+
+	/**
+	 * Launches the tool once for all given file locations, see
+	 * {@link #launch(Collection, IProgressMonitor)}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected String launch(IProject project, String[] phpFileLocations,
+			IProgressMonitor monitor) {
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		long start = metrics.startTimer();
+		try {
+			return launchTool(project, phpFileLocations, monitor);
+		} finally {
+			metrics.stopTimer(PHPToolMetrics.LAUNCH, tool, start);
+		}
+	}
+
+	private String launchTool(IProject project, String[] phpFileLocations,
+			IProgressMonitor monitor) {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
 		if (phpExe == null)
 			return null;
 
 		try {
-			if (phpFileLocation == null) {
+			if (phpFileLocations == null || phpFileLocations.length == 0) {
 				// Could not find target to launch
 				throw new CoreException(new Status(IStatus.ERROR,
 						PHPDebugUIPlugin.ID, IStatus.OK,
 						"Launch target not found", null));
 			}
 
+			String arguments = getArguments(phpFileLocations);
+			if (direct) {
+				String output = launchDirect(arguments, monitor);
+				if (output != null || monitor.isCanceled())
+					return output;
+			}
+
+			PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+			long findStart = metrics.startTimer();
 			ILaunchConfiguration config = findLaunchConfiguration(project,
 					phpScript.toOSString(), phpScript.toOSString(), phpExe,
 					ILaunchManager.RUN_MODE, getPHPExeLaunchConfigType());
+			metrics.stopTimer(PHPToolMetrics.FIND_LAUNCH_CONFIGURATION, tool,
+					findStart);
 
 			if (config != null) {
 				ILaunchConfigurationWorkingCopy wc = config.getWorkingCopy();
 
-				String arguments = commandLineArgs.replace(
-						COMMANDLINE_PLACEHOLDER_FILE,
-						OperatingSystem.escapeShellFileArg(phpFileLocation));
-
-				int lastPos = phpFileLocation.lastIndexOf("\\") != -1 ? phpFileLocation
-						.lastIndexOf("\\") : phpFileLocation.lastIndexOf("/");
-				String folderPath = lastPos != -1 ? OperatingSystem
-						.escapeShellFileArg(phpFileLocation.substring(0,
-								lastPos)) : "";
-				arguments = arguments.replace(COMMANDLINE_PLACEHOLDER_FOLDER,
-						folderPath);
-
-				wc.setAttribute(
-						IDebugParametersKeys.EXE_CONFIG_PROGRAM_ARGUMENTS,
-						arguments);
-				config = wc.doSave();
-
 				if (printOutput) {
 					phpLauncher.addOutputListener(outputListener);
 				}
 
-				IProcess process = phpLauncher.launch(config);
-				IStreamsProxy proxy = process.getStreamsProxy();
-				String output = proxy.getOutputStreamMonitor().getContents();
+				String output = null;
+				if (pooled) {
+					output = launchPooled(config, arguments, monitor);
+				}
+
+				if (output == null && !monitor.isCanceled()) {
+					// launch the unsaved working copy, the arguments change
+					// with every file and need not be persisted
+					wc.setAttribute(
+							IDebugParametersKeys.EXE_CONFIG_PROGRAM_ARGUMENTS,
+							arguments);
+					// the launched file is refreshed by launch(IFile)
+					wc.setAttribute(IPHPToolLaunchConstants.ATTR_REFRESH_MODE,
+							IPHPToolLaunchConstants.REFRESH_MODE_CONFIGURATION
+									.equals(refreshMode) ? refreshMode
+									: IPHPToolLaunchConstants.REFRESH_MODE_NONE);
+
+					IProcess process = phpLauncher.launch(wc, monitor);
+					if (process != null) {
+						IStreamsProxy proxy = process.getStreamsProxy();
+						output = proxy.getOutputStreamMonitor().getContents();
+					}
+				}
 
 				// if (printOutput)
 				// Logger.logToConsole(output, true);
@@ -199,6 +420,175 @@ public class PHPToolLauncher {
 		return null;
 	}
 
+	private String getArguments(String[] phpFileLocations) {
+		String arguments = commandLineArgs;
+		if (arguments.contains(COMMANDLINE_PLACEHOLDER_FILES)) {
+			StringBuffer files = new StringBuffer();
+			for (String location : phpFileLocations) {
+				if (files.length() > 0)
+					files.append(' ');
+				files.append(OperatingSystem.escapeShellFileArg(location));
+			}
+			arguments = arguments.replace(COMMANDLINE_PLACEHOLDER_FILES, files
+					.toString());
+		}
+
+		String phpFileLocation = phpFileLocations[0];
+		arguments = arguments.replace(COMMANDLINE_PLACEHOLDER_FILE,
+				OperatingSystem.escapeShellFileArg(phpFileLocation));
+
+		int lastPos = phpFileLocation.lastIndexOf("\\") != -1 ? phpFileLocation
+				.lastIndexOf("\\") : phpFileLocation.lastIndexOf("/");
+		String folderPath = lastPos != -1 ? OperatingSystem
+				.escapeShellFileArg(phpFileLocation.substring(0, lastPos)) : "";
+		return arguments.replace(COMMANDLINE_PLACEHOLDER_FOLDER, folderPath);
+	}
+
+	/**
+	 * Runs the tool as a plain process with {@link PHPToolProcessExecutor}.
+	 * Neither a launch configuration nor a launch is involved, so nothing is
+	 * persisted, added to the launch history or attached to a console. The
+	 * php.ini is prepared like the one of a launch configuration, see
+	 * {@link #getLaunchPlan()}.
+	 * 
+	 * @return the tool output or <code>null</code> if the direct launch
+	 *         failed and a regular launch should be used instead
+	 * @since 1.7.0
+	 */
+	protected String launchDirect(String arguments, IProgressMonitor monitor) {
+		if (printOutput)
+			phpLauncher.addOutputListener(outputListener);
+
+		try {
+			PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+			PHPToolProcessExecutor executor = new PHPToolProcessExecutor(
+					getLaunchPlan());
+
+			String[] args = DebugPlugin.parseArguments(arguments);
+			phpLauncher.notifyOutputListener(executor.getLaunchPlan()
+					.getCommandLine(args), ' ');
+			phpLauncher.notifyOutputListener("\n");
+
+			IOutputListener errorListener = new IOutputListener() {
+				public void handleOutput(String output) {
+					phpLauncher.notifyOutputListener(output);
+				}
+			};
+			IOutputListener standardOutputListener = new IOutputListener() {
+				public void handleOutput(String output) {
+					phpLauncher.notifyOutputListener(output);
+					phpLauncher.notifyStandardOutputListener(output);
+				}
+			};
+
+			long start = metrics.startTimer();
+			String output = executor.execute(args, errorListener,
+					standardOutputListener,
+					phpLauncher.standardOutputListenerList.isEmpty(), monitor);
+			metrics.stopTimer(PHPToolMetrics.DIRECT_EXECUTE, tool, start);
+
+			return output;
+		} catch (CoreException e) {
+			Logger.logException(e);
+		} finally {
+			if (printOutput)
+				phpLauncher.removeOutputListener(outputListener);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the plan of launches without a launch configuration. It is
+	 * built on first use, together with the php.ini, and shared through the
+	 * {@link PHPToolLaunchPlanCache}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected PHPToolLaunchPlan getLaunchPlan() {
+		PHPToolLaunchPlanCache cache = PHPToolLaunchPlanCache.getDefault();
+		File phpExeFile = phpExe.getExecutable();
+		String key = cache.createKey(tool, phpExeFile, phpScript, iniEntries,
+				TimeZone.getDefault().getID());
+		PHPToolLaunchPlan plan = cache.get(key);
+		if (plan != null)
+			return plan;
+
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		long start = metrics.startTimer();
+		File phpIni = createCustomPHPINIFile(null, phpExe, iniEntries);
+		metrics.stopTimer(PHPToolMetrics.CREATE_PHP_INI, tool, start);
+
+		plan = PHPToolLaunchPlan.create(tool, phpExeFile, phpIni,
+				findBasePHPINIFile(null, phpExe), phpScript);
+		cache.put(key, plan);
+		return plan;
+	}
+
+	/**
+	 * Runs the tool in a {@link PHPToolWorkerPool} worker instead of starting a
+	 * new PHP process.
+	 * 
+	 * @return the tool output or <code>null</code> if the pooled launch
+	 *         failed and a regular launch should be used instead
+	 * @throws CoreException
+	 *             if the tool did not finish in time, see
+	 *             {@link PHPToolWorkerPool#isTimeout(CoreException)}; a
+	 *             regular launch would not finish either
+	 * @since 1.7.0
+	 */
+	protected String launchPooled(ILaunchConfiguration config, String arguments)
+			throws CoreException {
+		return launchPooled(config, arguments, null);
+	}
+
+	/**
+	 * @see #launchPooled(ILaunchConfiguration, String)
+	 * @since 1.7.0
+	 */
+	protected String launchPooled(ILaunchConfiguration config,
+			String arguments, IProgressMonitor monitor) throws CoreException {
+		try {
+			File phpExeFile = phpExe.getExecutable();
+			PHPToolLaunchPlan plan = PHPToolLaunchPlanCache.getDefault().get(
+					config);
+
+			String[] toolArgs = DebugPlugin.parseArguments(arguments);
+			String[] args = new String[toolArgs.length + 1];
+			args[0] = phpScript.toOSString();
+			System.arraycopy(toolArgs, 0, args, 1, toolArgs.length);
+
+			phpLauncher.notifyOutputListener(args, ' ');
+			phpLauncher.notifyOutputListener("\n");
+
+			IOutputListener errorListener = new IOutputListener() {
+				public void handleOutput(String output) {
+					phpLauncher.notifyOutputListener(output);
+				}
+			};
+
+			PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+			long start = metrics.startTimer();
+			String output = PHPToolWorkerPool.getDefault().execute(tool,
+					phpExeFile, plan.getPHPIni(), phpScript.toFile()
+							.getParentFile(), plan.getEnvironment(), args,
+					errorListener, monitor);
+			metrics.stopTimer(PHPToolMetrics.POOLED_EXECUTE, tool, start);
+			phpLauncher.notifyOutputListener(output);
+			phpLauncher.notifyStandardOutputListener(output);
+
+			return output;
+		} catch (CoreException e) {
+			if (PHPToolWorkerPool.isTimeout(e))
+				throw e;
+			// an executable without worker support is logged once by the pool
+			if (!PHPToolWorkerPool.isUnsupported(e))
+				Logger.logException(e);
+		}
+
+		return null;
+	}
+
 	protected static ILaunchConfigurationType getPHPExeLaunchConfigType() {
 		ILaunchManager lm = DebugPlugin.getDefault().getLaunchManager();
 		return lm.getLaunchConfigurationType(IPHPCoreConstants.LaunchType);
@@ -206,7 +596,8 @@ public class PHPToolLauncher {
 
 	/**
 	 * Locate a configuration to relaunch for the given type. If one cannot be
-	 * found, create one.
+	 * found, create one. Concurrent launches of the same script, executable
+	 * and tool share the configuration created by the first one.
 	 * 
 	 * @return a re-useable config or <code>null</code> if none
 	 */
@@ -215,62 +606,71 @@ public class PHPToolLauncher {
 			PHPexeItem defaultEXE, String mode,
 			ILaunchConfigurationType configType) {
 
+		PHPToolLaunchConfigurationIndex index = PHPToolLaunchConfigurationIndex
+				.getDefault();
+		String phpExe = defaultEXE.getExecutable().toString();
 		ILaunchConfiguration config = null;
-		try {
-			ILaunchConfiguration[] configs = DebugPlugin.getDefault()
-					.getLaunchManager().getLaunchConfigurations(configType);
-
-			int numConfigs = configs == null ? 0 : configs.length;
-
-			for (int i = 0; i < numConfigs; i++) {
-				String fileName = configs[i].getAttribute(
-						IPHPDebugConstants.ATTR_FILE, (String) null);
-				String exeName = configs[i].getAttribute(
-						IPHPDebugConstants.ATTR_EXECUTABLE_LOCATION,
-						(String) null);
-				boolean isPti = configs[i].getAttribute(
-						PHPToolCorePlugin.PLUGIN_ID, false);
+		synchronized (index.getLock(phpPathString, phpExe, tool.toString())) {
+			try {
+				config = index.find(phpPathString, phpExe, tool.toString());
 
-				if (isPti
-						&& phpPathString.equals(fileName)
-						&& defaultEXE.getExecutable().toString()
-								.equals(exeName)) {
-					String iniLocation = configs[i]
-							.getAttribute(IPHPDebugConstants.ATTR_INI_LOCATION,
-									(String) null);
-					String toolName = configs[i]
-							.getAttribute(
-									IPHPToolLaunchConstants.ATTR_PHP_TOOL_QUALIFIED_NAME,
-									(String) null);
+				if (config != null) {
+					String iniLocation = config.getAttribute(
+							IPHPDebugConstants.ATTR_INI_LOCATION,
+							(String) null);
 					if (iniLocation == null
-							|| !(new File(iniLocation).exists())
-							|| toolName == null
-							|| !toolName.equals(tool.toString())) {
-						configs[i].delete();
-					} else {
-						config = configs[i];
+							|| !(new File(iniLocation).exists())) {
+						config.delete();
+						config = null;
 					}
-					break;
 				}
-			}
-
-			if (config == null) {
-				String iniFile = null;
-				File PHPINIFile = createCustomPHPINIFile(config, defaultEXE,
-						iniEntries);
-				if (PHPINIFile != null)
-					iniFile = PHPINIFile.getAbsolutePath().toString();
 
-				config = createConfiguration(phpProject, phpPathString,
-						phpFileFullLocation, defaultEXE, configType, iniFile);
+				if (config == null) {
+					String iniFile = null;
+					PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+					long start = metrics.startTimer();
+					File PHPINIFile = createCustomPHPINIFile(config,
+							defaultEXE, iniEntries);
+					metrics.stopTimer(PHPToolMetrics.CREATE_PHP_INI, tool,
+							start);
+					if (PHPINIFile != null)
+						iniFile = PHPINIFile.getAbsolutePath().toString();
+
+					config = createConfiguration(phpProject, phpPathString,
+							phpFileFullLocation, defaultEXE, configType,
+							iniFile);
+					index.register(config);
+				}
+			} catch (CoreException ce) {
+				Logger.logException(ce);
 			}
-		} catch (CoreException ce) {
-			Logger.logException(ce);
 		}
 
 		return config;
 	}
 
+	/**
+	 * Deletes the launch configurations of all PHP tools. They are created
+	 * again on the next launch.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static void deleteAllConfigs() {
+		ILaunchConfigurationType configType = getPHPExeLaunchConfigType();
+
+		try {
+			ILaunchConfiguration[] configs = DebugPlugin.getDefault()
+					.getLaunchManager().getLaunchConfigurations(configType);
+
+			for (ILaunchConfiguration config : configs) {
+				if (config.getAttribute(PHPToolCorePlugin.PLUGIN_ID, false))
+					config.delete();
+			}
+		} catch (CoreException e) {
+			Logger.logException(e);
+		}
+	}
+
 	public static void deleteAllConfigs(String phpPathString) {
 		if (phpPathString == null)
 			return;
@@ -298,8 +698,12 @@ public class PHPToolLauncher {
 		}
 	}
 
-	protected File createCustomPHPINIFile(ILaunchConfiguration config,
-			PHPexeItem defaultEXE, INIFileEntry[] fileEntries) {
+	/**
+	 * Returns the php.ini a custom php.ini is derived from, may be
+	 * <code>null</code>.
+	 */
+	private static File findBasePHPINIFile(ILaunchConfiguration config,
+			PHPexeItem defaultEXE) {
 		File oldPHPINIFile = defaultEXE.getINILocation();
 
 		if (oldPHPINIFile == null || !oldPHPINIFile.isFile()
@@ -320,6 +724,24 @@ public class PHPToolLauncher {
 			}
 		}
 
+		return oldPHPINIFile;
+	}
+
+	protected File createCustomPHPINIFile(ILaunchConfiguration config,
+			PHPexeItem defaultEXE, INIFileEntry[] fileEntries) {
+		File oldPHPINIFile = findBasePHPINIFile(config, defaultEXE);
+		fileEntries = PHPToolOpcache.getDefault().appendINIEntries(defaultEXE,
+				phpScript, fileEntries);
+
+		// reuse an identical php.ini generated before
+		String timeZone = TimeZone.getDefault().getID();
+		PHPToolINIFileCache iniFileCache = PHPToolINIFileCache.getDefault();
+		String cacheKey = iniFileCache.createKey(oldPHPINIFile, fileEntries,
+				timeZone);
+		File cachedPHPINIFile = iniFileCache.get(cacheKey);
+		if (cachedPHPINIFile != null)
+			return cachedPHPINIFile;
+
 		File tmpPHPINIFile;
 		if (oldPHPINIFile != null)
 			tmpPHPINIFile = PHPINIUtil.createTemporaryPHPINIFile(oldPHPINIFile);
@@ -331,11 +753,11 @@ public class PHPToolLauncher {
 
 			// Since PHP 5.3 you are *required* to use the date.timezone setting
 			// or the date_default_timezone_set() function.
-			modifier.addEntry("Date", "date.timezone", TimeZone.getDefault()
-					.getID());
+			modifier.addEntry("Date", "date.timezone", timeZone);
 
 			if (fileEntries != null && fileEntries.length > 0) {
-				for (INIFileEntry entry : fileEntries) {
+				for (INIFileEntry entry : PHPToolINIFileCache
+						.sortEntries(fileEntries)) {
 					String newValue = entry.getValue();
 					if (entry.isAdditional()) {
 						String oldValue = modifier.getEntry(entry.getSection(),
@@ -352,9 +774,10 @@ public class PHPToolLauncher {
 			modifier.close();
 		} catch (IOException e) {
 			Logger.logException(e);
+			return tmpPHPINIFile;
 		}
 
-		return tmpPHPINIFile;
+		return iniFileCache.put(cacheKey, tmpPHPINIFile);
 	}
 
 	/**
@@ -433,6 +856,41 @@ public class PHPToolLauncher {
 				.generateLaunchConfigurationName(configurationName);
 	}
 
+	/**
+	 * @since 1.7.0
+	 */
+	public QualifiedName getTool() {
+		return tool;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public PHPexeItem getPHPExecutable() {
+		return phpExe;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public IPath getPHPScript() {
+		return phpScript;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public INIFileEntry[] getINIEntries() {
+		return iniEntries;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public String getCommandLineArgs() {
+		return commandLineArgs;
+	}
+
 	public void setCommandLineArgs(String commandLineArgs) {
 		this.commandLineArgs = commandLineArgs;
 	}
@@ -441,6 +899,93 @@ public class PHPToolLauncher {
 		this.printOutput = printOutput;
 	}
 
+	/**
+	 * Enables or disables running the tool in a {@link PHPToolWorkerPool}
+	 * worker. The default is taken from the
+	 * {@link IPHPToolLaunchConstants#PREF_POOLED_LAUNCH} preference.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void setPooled(boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Enables or disables running the tool as a plain process, see
+	 * {@link #launchDirect(String, IProgressMonitor)}. The tool is not shown
+	 * in the debug view then and its output only reaches the console if
+	 * {@link #setPrintOuput(boolean)} is enabled. Takes precedence over a
+	 * pooled launch, disabled by default.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Sets which resources are refreshed after the tool ran, one of the
+	 * <code>REFRESH_MODE_*</code> values of {@link IPHPToolLaunchConstants}.
+	 * Tools that do not write any files should use
+	 * {@link IPHPToolLaunchConstants#REFRESH_MODE_NONE}.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void setRefreshMode(String refreshMode) {
+		Assert.isNotNull(refreshMode);
+		this.refreshMode = refreshMode;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public String getRefreshMode() {
+		return refreshMode;
+	}
+
+	/**
+	 * Refreshes just the given resources, e.g. the files a tool reported as
+	 * changed. Folders are refreshed without their members.
+	 * 
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @since 1.7.0
+	 */
+	public void refreshResources(Collection<? extends IResource> resources,
+			IProgressMonitor monitor) {
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		long start = metrics.startTimer();
+
+		SubMonitor subMonitor = SubMonitor.convert(monitor, resources.size());
+		for (IResource resource : resources) {
+			if (subMonitor.isCanceled())
+				break;
+
+			try {
+				resource.refreshLocal(IResource.DEPTH_ZERO, subMonitor
+						.newChild(1));
+			} catch (CoreException e) {
+				Logger.logException(e);
+			}
+		}
+
+		metrics.stopTimer(PHPToolMetrics.PROCESS_REFRESH, tool, start);
+	}
+
 	public void setAttribute(String key, String value) {
 		attributes.put(key, value);
 	}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.php.internal.debug.core.preferences.PHPexeItem;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.php.inifile.INIFileEntry;
+
+/**
+ * Lets short-lived PHP tool processes keep the compiled tool sources in an
+ * OPcache file cache. If enabled by
+ * {@link IPHPToolLaunchConstants#PREF_OPCACHE} and the PHP executable has
+ * OPcache loaded, {@link #appendINIEntries} adds <code>opcache.enable_cli</code>
+ * and <code>opcache.file_cache</code> to the generated php.ini.
+ * 
+ * The cache lives in <code>opcache/&lt;PHP version&gt;/&lt;library&gt;</code>
+ * below the state location of the plugin. The library part is derived from
+ * the tool script and its include path, including their modification times,
+ * so an updated tool gets a fresh cache; timestamp validation stays on for
+ * files changed in place. Once the caches
+ * exceed {@link #getMaxBytes()}, the least recently used ones are emptied by
+ * {@link #cleanup()} when the plugin stops. The directories themselves are
+ * kept, PHP refuses a missing file cache directory.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolOpcache {
+	private static final String CACHE_DIR = "opcache"; //$NON-NLS-1$
+	private static final String SECTION = "opcache"; //$NON-NLS-1$
+	private static final String INCLUDE_PATH = "include_path"; //$NON-NLS-1$
+	// the file cache was added with PHP 7.0
+	private static final String MIN_VERSION = "7.0"; //$NON-NLS-1$
+
+	private static PHPToolOpcache instance;
+
+	private final File cacheDir;
+	private long maxBytes = 256L * 1024 * 1024;
+
+	private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			if (IPHPToolLaunchConstants.PREF_OPCACHE.equals(event.getKey()))
+				invalidateLaunches();
+		}
+	};
+
+	PHPToolOpcache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the shared instance
+	 * 
+	 * @return the shared instance
+	 */
+	public static synchronized PHPToolOpcache getDefault() {
+		if (instance == null) {
+			File stateLocation = PHPToolCorePlugin.getDefault()
+					.getStateLocation().toFile();
+			instance = new PHPToolOpcache(new File(stateLocation, CACHE_DIR));
+			InstanceScope.INSTANCE.getNode(PHPToolCorePlugin.PLUGIN_ID)
+					.addPreferenceChangeListener(instance.preferenceListener);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Trims the caches and stops listening for preference changes.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			InstanceScope.INSTANCE.getNode(PHPToolCorePlugin.PLUGIN_ID)
+					.removePreferenceChangeListener(instance.preferenceListener);
+			instance.cleanup();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns whether the OPcache file cache is enabled by the workspace
+	 * preference {@link IPHPToolLaunchConstants#PREF_OPCACHE}.
+	 */
+	public static boolean isOpcacheEnabled() {
+		return Platform.getPreferencesService().getBoolean(
+				PHPToolCorePlugin.PLUGIN_ID, IPHPToolLaunchConstants.PREF_OPCACHE,
+				false, null);
+	}
+
+	/**
+	 * Drops the launches prepared so far, their php.ini files are outdated
+	 * once the preference changed or an executable has been probed.
+	 */
+	static void invalidateLaunches() {
+		PHPToolLaunchPlanCache.getDefault().clear();
+		PHPToolLauncher.deleteAllConfigs();
+	}
+
+	/**
+	 * Returns the given entries plus the OPcache entries for running the given
+	 * script. The entries are returned unchanged if the file cache is
+	 * disabled or the executable does not support it. Until the executable
+	 * has been probed in the background, it is treated as not supporting it,
+	 * so launching never waits for the probe.
+	 * 
+	 * @param entries
+	 *            the entries of the tool, may be <code>null</code>
+	 */
+	public INIFileEntry[] appendINIEntries(PHPexeItem phpExe, IPath phpScript,
+			INIFileEntry[] entries) {
+		if (!isOpcacheEnabled() || phpExe == null || phpScript == null)
+			return entries;
+
+		PHPExecutableInfo info = PHPExecutableRegistry.getDefault()
+				.getCachedInfo(phpExe);
+		if (info == null
+				|| !info.hasExtension(PHPExecutableInfo.EXTENSION_OPCACHE)
+				|| info.compareVersion(MIN_VERSION) < 0)
+			return entries;
+
+		File dir = getCacheDirectory(info.getVersion(), phpScript, entries);
+		if (dir == null)
+			return entries;
+
+		List<INIFileEntry> result = new ArrayList<INIFileEntry>();
+		if (entries != null)
+			result.addAll(Arrays.asList(entries));
+		result.add(new INIFileEntry(SECTION, "opcache.enable_cli", "1")); //$NON-NLS-1$ //$NON-NLS-2$
+		result.add(new INIFileEntry(SECTION, "opcache.file_cache", dir //$NON-NLS-1$
+				.getAbsolutePath()));
+		result.add(new INIFileEntry(SECTION, "opcache.validate_timestamps", //$NON-NLS-1$
+				"1")); //$NON-NLS-1$
+		return result.toArray(new INIFileEntry[result.size()]);
+	}
+
+	/**
+	 * Returns the cache directory for the given PHP version and tool, creating
+	 * it if necessary.
+	 * 
+	 * @return the directory or <code>null</code> if it could not be created
+	 */
+	public synchronized File getCacheDirectory(String phpVersion,
+			IPath phpScript, INIFileEntry[] entries) {
+		File dir = new File(new File(cacheDir, phpVersion.replaceAll(
+				"[^0-9A-Za-z.\\-]", "_")), createLibraryKey(phpScript, entries)); //$NON-NLS-1$ //$NON-NLS-2$
+		if (!dir.isDirectory() && !dir.mkdirs())
+			return null;
+
+		// marks the directory as used for cleanup()
+		dir.setLastModified(System.currentTimeMillis());
+		return dir;
+	}
+
+	/**
+	 * Returns a key identifying the given tool script and the libraries on
+	 * its include path, including their modification times, so it changes
+	 * once the tool is updated.
+	 */
+	public static String createLibraryKey(IPath phpScript,
+			INIFileEntry[] entries) {
+		File script = phpScript.toFile();
+		StringBuffer key = new StringBuffer();
+		key.append(script.getAbsolutePath()).append('\0');
+		key.append(script.lastModified()).append('\0');
+
+		if (entries != null) {
+			for (INIFileEntry entry : entries) {
+				if (!INCLUDE_PATH.equals(entry.getName()))
+					continue;
+
+				for (String path : entry.getValue().split(File.pathSeparator)) {
+					key.append(path).append('\0');
+					key.append(new File(path).lastModified()).append('\0');
+				}
+			}
+		}
+
+		MessageDigest digest = PHPToolINIFileCache.createDigest();
+		return PHPToolINIFileCache.toHex(digest.digest(key.toString()
+				.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Empties the least recently used caches until all of them together take
+	 * at most {@link #getMaxBytes()}.
+	 */
+	public synchronized void cleanup() {
+		List<File> dirs = new ArrayList<File>();
+		File[] versionDirs = cacheDir.listFiles();
+		if (versionDirs == null)
+			return;
+
+		for (File versionDir : versionDirs) {
+			File[] libraryDirs = versionDir.listFiles();
+			if (libraryDirs != null)
+				dirs.addAll(Arrays.asList(libraryDirs));
+		}
+
+		// newest first
+		File[] sorted = dirs.toArray(new File[dirs.size()]);
+		Arrays.sort(sorted, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return Long.compare(f2.lastModified(), f1.lastModified());
+			}
+		});
+
+		long total = 0;
+		for (File dir : sorted) {
+			long lastUsed = dir.lastModified();
+			total += size(dir);
+			if (total > maxBytes) {
+				deleteContents(dir);
+				// keep the mark, deleting the contents touched the directory
+				dir.setLastModified(lastUsed);
+			}
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	private static long size(File file) {
+		if (file.isFile())
+			return file.length();
+
+		long size = 0;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				size += size(child);
+			}
+		}
+		return size;
+	}
+
+	private static void deleteContents(File dir) {
+		File[] children = dir.listFiles();
+		if (children == null)
+			return;
+
+		for (File child : children) {
+			if (child.isDirectory())
+				deleteContents(child);
+			child.delete();
+		}
+	}
+}
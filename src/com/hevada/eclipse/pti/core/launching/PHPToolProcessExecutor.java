@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.listener.IOutputListener;
+
+/**
+ * Runs a PHP script as a plain process, without the launch framework. The
+ * command line, environment and working directory are taken from a
+ * {@link PHPToolLaunchPlan}, but there is no launch, no process in the debug
+ * view and no console; the output streams are read directly.
+ * 
+ * @see PHPToolLauncher#setDirect(boolean)
+ * @since 1.7.0
+ */
+public class PHPToolProcessExecutor {
+	private static final int BUFFER_SIZE = 8192;
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private final Charset charset = Charset.defaultCharset();
+	private final PHPToolLaunchPlan plan;
+
+	public PHPToolProcessExecutor(PHPToolLaunchPlan plan) {
+		this.plan = plan;
+	}
+
+	public PHPToolLaunchPlan getLaunchPlan() {
+		return plan;
+	}
+
+	/**
+	 * Runs the script with the given arguments and waits for it to terminate.
+	 * Canceling <code>monitor</code> destroys the process.
+	 * 
+	 * @param errorListener
+	 *            receives the error output, may be <code>null</code>
+	 * @param outputListener
+	 *            receives the standard output while the script runs, may be
+	 *            <code>null</code>
+	 * @param bufferOutput
+	 *            whether the standard output is collected and returned
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @return the standard output or an empty string if it is not buffered
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 */
+	public String execute(String[] args,
+			IOutputListener errorListener, IOutputListener outputListener,
+			boolean bufferOutput, IProgressMonitor monitor)
+			throws CoreException {
+		final IProgressMonitor progressMonitor = monitor != null ? monitor
+				: new NullProgressMonitor();
+		if (progressMonitor.isCanceled())
+			throw new OperationCanceledException();
+
+		ProcessBuilder builder = new ProcessBuilder(plan.getCommandLine(args));
+		builder.directory(plan.getWorkingDirectory());
+		applyEnvironment(builder.environment());
+
+		final Process process;
+		try {
+			process = builder.start();
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+					"Could not start " + plan.getPHPExecutable(), e)); //$NON-NLS-1$
+		}
+
+		try {
+			process.getOutputStream().close();
+		} catch (IOException e) {
+		}
+
+		Thread errorReader = startErrorReader(process.getErrorStream(),
+				errorListener);
+		ScheduledFuture<?> cancelCheck = PHPToolExecutableLauncher.CANCEL_WATCHER
+				.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						if (progressMonitor.isCanceled())
+							process.destroy();
+					}
+				}, CANCEL_POLL_INTERVAL, CANCEL_POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+
+		StringBuffer output = bufferOutput ? new StringBuffer() : null;
+		try {
+			Reader reader = new InputStreamReader(process.getInputStream(),
+					charset);
+			char[] buffer = new char[BUFFER_SIZE];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				if (output != null)
+					output.append(buffer, 0, read);
+				if (outputListener != null)
+					outputListener.handleOutput(new String(buffer, 0, read));
+			}
+
+			process.waitFor();
+			errorReader.join();
+		} catch (IOException e) {
+			process.destroy();
+			if (!progressMonitor.isCanceled()) {
+				throw new CoreException(new Status(IStatus.ERROR,
+						PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+						"Could not read the output of " //$NON-NLS-1$
+								+ plan.getPHPExecutable(), e));
+			}
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			cancelCheck.cancel(false);
+		}
+
+		if (progressMonitor.isCanceled())
+			throw new OperationCanceledException();
+
+		return output != null ? output.toString() : ""; //$NON-NLS-1$
+	}
+
+	private void applyEnvironment(Map<String, String> environment) {
+		String[] envp = plan.getConfiguredEnvironment();
+		if (envp != null) {
+			environment.clear();
+			putVariables(environment, envp);
+		}
+
+		String[] libraryPath = PHPToolExecutableLauncher.appendLibraryPath(
+				null, plan.getPHPExecutable());
+		if (libraryPath != null)
+			putVariables(environment, libraryPath);
+	}
+
+	private static void putVariables(Map<String, String> environment,
+			String[] variables) {
+		for (String variable : variables) {
+			int pos = variable.indexOf('=');
+			if (pos > 0)
+				environment.put(variable.substring(0, pos), variable
+						.substring(pos + 1));
+		}
+	}
+
+	private Thread startErrorReader(final InputStream stream,
+			final IOutputListener listener) {
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Reader reader = new InputStreamReader(stream, charset);
+					char[] buffer = new char[BUFFER_SIZE];
+					int read;
+					while ((read = reader.read(buffer)) != -1) {
+						if (listener != null)
+							listener.handleOutput(new String(buffer, 0, read));
+					}
+				} catch (IOException e) {
+					// the process has gone away
+				}
+			}
+		}, "PHP Tool Process Error Reader"); //$NON-NLS-1$
+		reader.setDaemon(true);
+		reader.start();
+		return reader;
+	}
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.debug.core.DebugPlugin;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.listener.IOutputListener;
+
+/**
+ * A single long-lived PHP process running the <code>pti_worker.php</code>
+ * script. Requests and responses are exchanged as length prefixed frames over
+ * stdin and stdout, stderr is forwarded to the current output listener.
+ * Response frames start with a random token, output a tool wrote to stdout
+ * past the worker precedes the frame and is added to the response.
+ * 
+ * A worker serves one request at a time, {@link PHPToolWorkerPool} takes care
+ * of handing it to a single thread only.
+ */
+class PHPToolWorker {
+	private static final String PING = "PING"; //$NON-NLS-1$
+	private static final String PONG = "PONG"; //$NON-NLS-1$
+	private static final String READY = "READY"; //$NON-NLS-1$
+	private static final String UNSUPPORTED = "UNSUPPORTED"; //$NON-NLS-1$
+	private static final char ARGUMENT_SEPARATOR = '\0';
+	private static final long POLL_INTERVAL = 100;
+	private static final long STARTUP_TIMEOUT = 10000;
+
+	/**
+	 * Status code of the exception thrown if the PHP executable cannot run
+	 * workers, i.e. lacks pcntl.
+	 */
+	static final int STATUS_UNSUPPORTED = 1;
+
+	/**
+	 * Thrown by {@link PHPToolWorker#execute} if the tool did not finish in
+	 * time. The worker has been destroyed then.
+	 */
+	static class ExecuteTimeoutException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ExecuteTimeoutException(String message) {
+			super(message);
+		}
+	}
+
+	// marks the end of the response stream, the process has gone away
+	private static final Object EOF = new Object();
+
+	private final Charset charset = Charset.defaultCharset();
+	// P does not occur in the hex digits, see readResponses()
+	private final byte[] token = ("PTI" + UUID.randomUUID().toString() //$NON-NLS-1$
+			.replace("-", "")).getBytes(charset); //$NON-NLS-1$ //$NON-NLS-2$
+	private final Process process;
+	private final OutputStream requestStream;
+	private final BlockingQueue<Object> responses = new LinkedBlockingQueue<Object>();
+	private volatile IOutputListener errorListener;
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * Starts the worker and waits until it is ready.
+	 * 
+	 * @throws CoreException
+	 *             if the worker could not be started, with the code
+	 *             {@link #STATUS_UNSUPPORTED} if PHP lacks pcntl
+	 */
+	PHPToolWorker(String[] cmdLine, File workingDir, String[] envp)
+			throws CoreException {
+		String[] workerCmdLine = new String[cmdLine.length + 1];
+		System.arraycopy(cmdLine, 0, workerCmdLine, 0, cmdLine.length);
+		workerCmdLine[cmdLine.length] = new String(token, charset);
+		process = DebugPlugin.exec(workerCmdLine, workingDir, envp);
+		requestStream = process.getOutputStream();
+
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				readResponses(process.getInputStream());
+			}
+		}, "PHP Tool Worker Reader"); //$NON-NLS-1$
+		reader.setDaemon(true);
+		reader.start();
+
+		Thread errorReader = new Thread(new Runnable() {
+			public void run() {
+				readErrors(process.getErrorStream());
+			}
+		}, "PHP Tool Worker Error Reader"); //$NON-NLS-1$
+		errorReader.setDaemon(true);
+		errorReader.start();
+
+		String hello;
+		try {
+			hello = awaitResponse(null, STARTUP_TIMEOUT);
+		} catch (IOException e) {
+			destroy();
+			throw new CoreException(new Status(IStatus.ERROR,
+					PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+					"PHP tool worker could not be started", e)); //$NON-NLS-1$
+		}
+
+		if (!READY.equals(hello)) {
+			destroy();
+			throw new CoreException(new Status(IStatus.ERROR,
+					PHPToolCorePlugin.PLUGIN_ID,
+					UNSUPPORTED.equals(hello) ? STATUS_UNSUPPORTED : IStatus.OK,
+					"PHP tool workers require the pcntl extension", null)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Runs the given tool arguments in the worker and returns the standard
+	 * output the tool produced.
+	 * 
+	 * @param timeout
+	 *            the milliseconds the tool may run, 0 for no limit
+	 * @throws ExecuteTimeoutException
+	 *             if the tool did not finish in time, the worker is destroyed
+	 *             then
+	 * @throws IOException
+	 *             if the worker died while handling the request
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled, the worker is destroyed then
+	 */
+	String execute(String[] args, IOutputListener listener,
+			IProgressMonitor monitor, long timeout) throws IOException {
+		StringBuffer request = new StringBuffer();
+		for (String arg : args) {
+			if (request.length() > 0)
+				request.append(ARGUMENT_SEPARATOR);
+			request.append(arg);
+		}
+
+		errorListener = listener;
+		try {
+			writeFrame(request.toString());
+			return awaitResponse(monitor, timeout);
+		} finally {
+			errorListener = null;
+			lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Sends a ping to the worker and waits at most <code>timeout</code>
+	 * milliseconds for the answer.
+	 * 
+	 * @return <code>true</code> if the worker answered in time
+	 */
+	boolean ping(long timeout) {
+		if (!isAlive())
+			return false;
+
+		try {
+			writeFrame(PING);
+			return PONG.equals(awaitResponse(null, timeout));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	boolean isAlive() {
+		return process.isAlive();
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	void destroy() {
+		try {
+			requestStream.close();
+		} catch (IOException e) {
+		}
+		// the process forked for the running request
+		process.descendants().forEach(ProcessHandle::destroy);
+		process.destroy();
+	}
+
+	private void writeFrame(String payload) throws IOException {
+		byte[] data = payload.getBytes(charset);
+		requestStream.write((data.length + "\n").getBytes(charset)); //$NON-NLS-1$
+		requestStream.write(data);
+		requestStream.flush();
+	}
+
+	private String awaitResponse(IProgressMonitor monitor, long timeout)
+			throws IOException {
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout
+				: Long.MAX_VALUE;
+		try {
+			while (true) {
+				Object response = responses.poll(POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (response == EOF) {
+					throw new EOFException("PHP tool worker terminated"); //$NON-NLS-1$
+				} else if (response != null) {
+					return (String) response;
+				}
+
+				if (monitor != null && monitor.isCanceled()) {
+					destroy();
+					throw new OperationCanceledException();
+				}
+
+				if (System.currentTimeMillis() > deadline) {
+					destroy();
+					throw new ExecuteTimeoutException(
+							"PHP tool worker did not answer in time"); //$NON-NLS-1$
+				}
+			}
+		} catch (InterruptedException e) {
+			destroy();
+			Thread.currentThread().interrupt();
+			throw new IOException(
+					"Interrupted while waiting for PHP tool worker"); //$NON-NLS-1$
+		}
+	}
+
+	private void readResponses(InputStream stream) {
+		InputStream in = new BufferedInputStream(stream);
+		try {
+			while (true) {
+				ByteArrayOutputStream response = new ByteArrayOutputStream();
+				if (!readUntilToken(in, response))
+					break;
+
+				int length = readLength(in);
+				if (length < 0)
+					break;
+
+				byte[] data = new byte[length];
+				int read = 0;
+				while (read < length) {
+					int count = in.read(data, read, length - read);
+					if (count < 0)
+						throw new EOFException();
+					read += count;
+				}
+				response.write(data);
+				responses.add(new String(response.toByteArray(), charset));
+			}
+		} catch (IOException e) {
+		} finally {
+			responses.add(EOF);
+		}
+	}
+
+	/**
+	 * Copies everything up to the next token to <code>out</code>, this is
+	 * output the tool wrote to stdout directly. As the first byte of the token
+	 * occurs nowhere else in it, a mismatch never hides the start of a token.
+	 * 
+	 * @return <code>false</code> if the stream ended before a token
+	 */
+	private boolean readUntilToken(InputStream in, ByteArrayOutputStream out)
+			throws IOException {
+		int matched = 0;
+		while (matched < token.length) {
+			int c = in.read();
+			if (c < 0)
+				return false;
+
+			if (c == (token[matched] & 0xff)) {
+				++matched;
+			} else {
+				out.write(token, 0, matched);
+				if (c == (token[0] & 0xff)) {
+					matched = 1;
+				} else {
+					matched = 0;
+					out.write(c);
+				}
+			}
+		}
+		return true;
+	}
+
+	private int readLength(InputStream in) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0)
+				return -1;
+			header.write(c);
+		}
+
+		try {
+			return Integer
+					.parseInt(header.toString(charset.name()).trim());
+		} catch (NumberFormatException e) {
+			// something else than the worker wrote to stdout, give up
+			throw new IOException("Malformed PHP tool worker frame"); //$NON-NLS-1$
+		}
+	}
+
+	private void readErrors(InputStream stream) {
+		Reader reader = new InputStreamReader(stream, charset);
+		char[] buffer = new char[4096];
+		try {
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				IOutputListener listener = errorListener;
+				if (listener != null)
+					listener.handleOutput(new String(buffer, 0, count));
+			}
+		} catch (IOException e) {
+		}
+	}
+}
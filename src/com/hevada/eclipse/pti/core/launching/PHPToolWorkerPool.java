@@ -0,0 +1,465 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.launching;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.listener.IOutputListener;
+import com.hevada.eclipse.pti.ui.Logger;
+
+/**
+ * Keeps long-lived PHP worker processes per PHP executable, php.ini and tool,
+ * so a tool run does not pay the interpreter startup for every single file.
+ * 
+ * Workers are checked with a ping before they are reused after being idle for
+ * a while, evicted after {@link #getIdleTimeout()} milliseconds without work
+ * and replaced transparently if they crash. A tool running longer than
+ * {@link #getExecuteTimeout()} milliseconds is killed along with its worker.
+ * 
+ * Each request runs in a process forked from the worker, which requires the
+ * pcntl extension. Without it the pool refuses to start workers and launches
+ * fall back to a process per run.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolWorkerPool {
+	private static final String WORKER_SCRIPT = "php/pti_worker.php"; //$NON-NLS-1$
+	private static final long HEALTH_CHECK_AGE = 10000;
+	private static final long HEALTH_CHECK_TIMEOUT = 5000;
+	private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	private static final long DEFAULT_EXECUTE_TIMEOUT = 300000;
+
+	/**
+	 * Status code of the exception thrown by
+	 * {@link #execute(QualifiedName, File, File, File, String[], String[], IOutputListener, IProgressMonitor)}
+	 * if the tool did not finish within {@link #getExecuteTimeout()}.
+	 */
+	public static final int STATUS_TIMEOUT = 2;
+
+	private static PHPToolWorkerPool instance;
+
+	private final Map<WorkerKey, WorkerGroup> groups = new HashMap<WorkerKey, WorkerGroup>();
+	private final EvictionJob evictionJob = new EvictionJob();
+	private int poolSize = Runtime.getRuntime().availableProcessors();
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private volatile long executeTimeout = DEFAULT_EXECUTE_TIMEOUT;
+	private boolean shutdown = false;
+
+	private static class WorkerKey {
+		private final String phpExe;
+		private final String phpIni;
+		private final QualifiedName tool;
+		private final String workingDir;
+
+		WorkerKey(String phpExe, String phpIni, QualifiedName tool,
+				File workingDir) {
+			this.phpExe = phpExe;
+			this.phpIni = phpIni != null ? phpIni : ""; //$NON-NLS-1$
+			this.tool = tool;
+			this.workingDir = workingDir != null ? workingDir
+					.getAbsolutePath() : ""; //$NON-NLS-1$
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof WorkerKey))
+				return false;
+
+			WorkerKey other = (WorkerKey) obj;
+			return phpExe.equals(other.phpExe) && phpIni.equals(other.phpIni)
+					&& tool.equals(other.tool)
+					&& workingDir.equals(other.workingDir);
+		}
+
+		public int hashCode() {
+			int hash = phpExe.hashCode();
+			hash = 31 * hash + phpIni.hashCode();
+			hash = 31 * hash + tool.hashCode();
+			return 31 * hash + workingDir.hashCode();
+		}
+	}
+
+	private class WorkerGroup {
+		private final WorkerKey key;
+		private final String[] envp;
+		private final LinkedList<PHPToolWorker> idle = new LinkedList<PHPToolWorker>();
+		private int size = 0;
+		// the PHP executable cannot run workers, don't try again
+		private CoreException unsupported = null;
+
+		WorkerGroup(WorkerKey key, String[] envp) {
+			this.key = key;
+			this.envp = envp;
+		}
+
+		PHPToolWorker acquire(IProgressMonitor monitor) throws CoreException {
+			while (true) {
+				PHPToolWorker candidate = null;
+				synchronized (this) {
+					if (unsupported != null) {
+						throw unsupported;
+					} else if (!idle.isEmpty()) {
+						candidate = idle.removeFirst();
+					} else if (size < poolSize) {
+						++size;
+					} else {
+						if (monitor.isCanceled())
+							throw new OperationCanceledException();
+
+						try {
+							wait(100);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new OperationCanceledException();
+						}
+						continue;
+					}
+				}
+
+				// health checks and process creation happen outside the lock
+				if (candidate != null) {
+					if (isHealthy(candidate))
+						return candidate;
+
+					discard(candidate);
+					continue;
+				}
+
+				try {
+					return createWorker(key, envp);
+				} catch (CoreException e) {
+					synchronized (this) {
+						--size;
+						if (isUnsupported(e) && unsupported == null) {
+							Logger.logException(e);
+							unsupported = e;
+						}
+						notifyAll();
+					}
+					throw e;
+				}
+			}
+		}
+
+		synchronized void release(PHPToolWorker worker) {
+			if (worker.isAlive() && !isShutdown()) {
+				idle.addFirst(worker);
+			} else {
+				worker.destroy();
+				--size;
+			}
+			notifyAll();
+		}
+
+		synchronized void discard(PHPToolWorker worker) {
+			worker.destroy();
+			--size;
+			notifyAll();
+		}
+
+		synchronized void evict(long idleSince) {
+			Iterator<PHPToolWorker> it = idle.iterator();
+			while (it.hasNext()) {
+				PHPToolWorker worker = it.next();
+				if (worker.getLastUsed() < idleSince || !worker.isAlive()) {
+					it.remove();
+					worker.destroy();
+					--size;
+				}
+			}
+		}
+
+		synchronized void destroy() {
+			for (PHPToolWorker worker : idle) {
+				worker.destroy();
+			}
+			size -= idle.size();
+			idle.clear();
+		}
+
+		synchronized boolean isEmpty() {
+			return size == 0;
+		}
+
+		private boolean isHealthy(PHPToolWorker worker) {
+			if (!worker.isAlive())
+				return false;
+			long idleTime = System.currentTimeMillis() - worker.getLastUsed();
+			if (idleTime < HEALTH_CHECK_AGE)
+				return true;
+
+			return worker.ping(HEALTH_CHECK_TIMEOUT);
+		}
+	}
+
+	private class EvictionJob extends Job {
+		EvictionJob() {
+			super("PHP Tool Worker Eviction"); //$NON-NLS-1$
+			setSystem(true);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			if (evictIdleWorkers())
+				schedule(idleTimeout / 2);
+
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Returns the shared pool instance
+	 * 
+	 * @return the shared pool instance
+	 */
+	public static synchronized PHPToolWorkerPool getDefault() {
+		if (instance == null)
+			instance = new PHPToolWorkerPool();
+
+		return instance;
+	}
+
+	/**
+	 * Returns whether pooled launching is enabled by the workspace preference
+	 * {@link IPHPToolLaunchConstants#PREF_POOLED_LAUNCH}.
+	 */
+	public static boolean isPooledLaunchEnabled() {
+		return Platform.getPreferencesService().getBoolean(
+				PHPToolCorePlugin.PLUGIN_ID,
+				IPHPToolLaunchConstants.PREF_POOLED_LAUNCH, false, null);
+	}
+
+	/**
+	 * Runs the tool arguments in a pooled worker for the given executable,
+	 * php.ini and tool. The worker is started on demand. If the worker crashes
+	 * while handling the request, the request is retried once on a fresh
+	 * worker. A request exceeding {@link #getExecuteTimeout()} is not
+	 * retried, its worker is destroyed and replaced by the next request.
+	 * 
+	 * @param tool
+	 *            the tool the worker is reserved for
+	 * @param phpExe
+	 *            the PHP executable
+	 * @param phpIni
+	 *            the php.ini to start the worker with, may be <code>null</code>
+	 * @param workingDir
+	 *            the working directory of the worker
+	 * @param envp
+	 *            the worker environment, <code>null</code> to inherit it
+	 * @param args
+	 *            the tool script followed by its arguments
+	 * @param listener
+	 *            receives the error output of the tool, may be
+	 *            <code>null</code>
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @return the standard output of the tool
+	 * @throws CoreException
+	 *             if no worker could be started, the request failed twice or
+	 *             timed out, see {@link #isUnsupported(CoreException)} and
+	 *             {@link #isTimeout(CoreException)}
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 */
+	public String execute(QualifiedName tool, File phpExe, File phpIni,
+			File workingDir, String[] envp, String[] args,
+			IOutputListener listener, IProgressMonitor monitor)
+			throws CoreException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+
+		WorkerGroup group = getGroup(new WorkerKey(phpExe.getAbsolutePath(),
+				phpIni != null ? phpIni.getAbsolutePath() : null, tool,
+				workingDir), envp);
+
+		IOException failure = null;
+		for (int attempt = 0; attempt < 2; ++attempt) {
+			PHPToolWorker worker = group.acquire(monitor);
+			try {
+				String output = worker.execute(args, listener, monitor,
+						executeTimeout);
+				group.release(worker);
+				return output;
+			} catch (PHPToolWorker.ExecuteTimeoutException e) {
+				group.discard(worker);
+				throw new CoreException(new Status(IStatus.ERROR,
+						PHPToolCorePlugin.PLUGIN_ID, STATUS_TIMEOUT,
+						"PHP tool did not finish within " //$NON-NLS-1$
+								+ executeTimeout / 1000 + " seconds", e)); //$NON-NLS-1$
+			} catch (IOException e) {
+				group.discard(worker);
+				failure = e;
+			} catch (RuntimeException e) {
+				group.discard(worker);
+				throw e;
+			}
+		}
+
+		throw new CoreException(new Status(IStatus.ERROR,
+				PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+				"PHP tool worker failed", failure)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns whether the given exception of
+	 * {@link #execute(QualifiedName, File, File, File, String[], String[], IOutputListener, IProgressMonitor)}
+	 * means the PHP executable cannot run workers at all, because it lacks the
+	 * pcntl extension. This has been logged once already.
+	 */
+	public static boolean isUnsupported(CoreException e) {
+		return e.getStatus().getCode() == PHPToolWorker.STATUS_UNSUPPORTED;
+	}
+
+	/**
+	 * Returns whether the given exception of
+	 * {@link #execute(QualifiedName, File, File, File, String[], String[], IOutputListener, IProgressMonitor)}
+	 * means the tool did not finish within {@link #getExecuteTimeout()}.
+	 */
+	public static boolean isTimeout(CoreException e) {
+		return e.getStatus().getCode() == STATUS_TIMEOUT;
+	}
+
+	/**
+	 * Destroys all idle workers. Busy workers are destroyed when they are
+	 * handed back.
+	 */
+	public void shutdown() {
+		List<WorkerGroup> allGroups;
+		synchronized (groups) {
+			shutdown = true;
+			allGroups = new ArrayList<WorkerGroup>(groups.values());
+			groups.clear();
+		}
+
+		evictionJob.cancel();
+		for (WorkerGroup group : allGroups) {
+			group.destroy();
+		}
+	}
+
+	private boolean isShutdown() {
+		synchronized (groups) {
+			return shutdown;
+		}
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Sets the maximum number of workers per executable, php.ini and tool.
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = Math.max(1, poolSize);
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which an unused worker is stopped.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = Math.max(1000, idleTimeout);
+	}
+
+	public long getExecuteTimeout() {
+		return executeTimeout;
+	}
+
+	/**
+	 * Sets the time in milliseconds a tool may run in a worker before it is
+	 * killed, 0 for no limit. Defaults to five minutes.
+	 */
+	public void setExecuteTimeout(long executeTimeout) {
+		this.executeTimeout = Math.max(0, executeTimeout);
+	}
+
+	private WorkerGroup getGroup(WorkerKey key, String[] envp)
+			throws CoreException {
+		synchronized (groups) {
+			if (shutdown) {
+				throw new CoreException(new Status(IStatus.ERROR,
+						PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+						"PHP tool worker pool has been shut down", null)); //$NON-NLS-1$
+			}
+
+			WorkerGroup group = groups.get(key);
+			if (group == null) {
+				group = new WorkerGroup(key, envp);
+				groups.put(key, group);
+				evictionJob.schedule(idleTimeout / 2);
+			}
+			return group;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if there are workers left to watch
+	 */
+	private boolean evictIdleWorkers() {
+		long idleSince = System.currentTimeMillis() - idleTimeout;
+		synchronized (groups) {
+			Iterator<WorkerGroup> it = groups.values().iterator();
+			while (it.hasNext()) {
+				WorkerGroup group = it.next();
+				group.evict(idleSince);
+				if (group.isEmpty())
+					it.remove();
+			}
+			return !groups.isEmpty();
+		}
+	}
+
+	private PHPToolWorker createWorker(WorkerKey key, String[] envp)
+			throws CoreException {
+		IPath script = PHPToolCorePlugin.getDefault().resolvePluginResource(
+				WORKER_SCRIPT);
+		if (script == null) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+					"PHP tool worker script not found", null)); //$NON-NLS-1$
+		}
+
+		ArrayList<String> cmdLine = new ArrayList<String>();
+		cmdLine.add(OperatingSystem.escapePHPFileArg(key.phpExe));
+		if (key.phpIni.length() > 0) {
+			cmdLine.add("-c"); //$NON-NLS-1$
+			cmdLine.add(OperatingSystem.escapeShellFileArg(key.phpIni));
+		}
+		cmdLine.add(OperatingSystem.escapeShellFileArg(script.toOSString()));
+
+		File workingDir = key.workingDir.length() > 0 ? new File(
+				key.workingDir) : null;
+		if (workingDir != null && !workingDir.exists())
+			workingDir = null;
+
+		Logger.trace("Starting PHP tool worker for " + key.tool); //$NON-NLS-1$
+		return new PHPToolWorker(cmdLine.toArray(new String[0]), workingDir,
+				envp);
+	}
+}
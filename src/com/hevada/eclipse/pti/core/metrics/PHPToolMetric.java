@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A distribution of values recorded for one measurement of one tool, e.g.
+ * the launch times of a tool. Besides count, sum and maximum it keeps a
+ * histogram with one bucket per power of two, so percentiles are accurate
+ * to a factor of two. Recording takes no locks.
+ * 
+ * @see PHPToolMetrics
+ * @since 1.7.0
+ */
+public class PHPToolMetric {
+	public static final String UNIT_NANOSECONDS = "ns"; //$NON-NLS-1$
+	public static final String UNIT_CHARACTERS = "chars"; //$NON-NLS-1$
+	public static final String UNIT_COUNT = "count"; //$NON-NLS-1$
+
+	// bucket i holds the values of bit length i, 0 up to 63
+	private static final int BUCKETS = 64;
+
+	private final String name;
+	private final String tool;
+	private final String unit;
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	PHPToolMetric(String name, String tool, String unit) {
+		this.name = name;
+		this.tool = tool;
+		this.unit = unit;
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		count.increment();
+		sum.add(value);
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value))
+				break;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the tool the values were recorded for, <code>null</code> for
+	 * values not related to a tool.
+	 */
+	public String getTool() {
+		return tool;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long n = getCount();
+		return n > 0 ? getSum() / n : 0;
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile, e.g. 0.9 for the value
+	 * 90% of the recorded values do not exceed.
+	 */
+	public long getPercentile(double percentile) {
+		long n = getCount();
+		if (n == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(percentile * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+		}
+		return getMax();
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("name", name); //$NON-NLS-1$
+		if (tool != null)
+			json.put("tool", tool); //$NON-NLS-1$
+		json.put("unit", unit); //$NON-NLS-1$
+		json.put("count", getCount()); //$NON-NLS-1$
+		json.put("sum", getSum()); //$NON-NLS-1$
+		json.put("mean", getMean()); //$NON-NLS-1$
+		json.put("p50", getPercentile(0.5)); //$NON-NLS-1$
+		json.put("p90", getPercentile(0.9)); //$NON-NLS-1$
+		json.put("p99", getPercentile(0.99)); //$NON-NLS-1$
+		json.put("max", getMax()); //$NON-NLS-1$
+		return json;
+	}
+
+	public String toString() {
+		boolean time = UNIT_NANOSECONDS.equals(unit);
+		return name + (tool != null ? " [" + tool + "]" : "") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ ": count=" + getCount() //$NON-NLS-1$
+				+ " mean=" + format(getMean(), time) //$NON-NLS-1$
+				+ " p90=" + format(getPercentile(0.9), time) //$NON-NLS-1$
+				+ " max=" + format(getMax(), time) //$NON-NLS-1$
+				+ (time ? "" : " " + unit); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String format(long value, boolean time) {
+		if (!time)
+			return Long.toString(value);
+
+		return String.format("%.1fms", Double.valueOf(value / 1000000.0)); //$NON-NLS-1$
+	}
+}
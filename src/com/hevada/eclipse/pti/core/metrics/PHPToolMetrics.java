@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.launching.IPHPToolLaunchConstants;
+import com.hevada.eclipse.pti.ui.ConsoleSink;
+
+/**
+ * Registry of the {@link PHPToolMetric}s recorded while tools are launched
+ * and their output is parsed. Recording is enabled by the workspace
+ * preference {@link IPHPToolLaunchConstants#PREF_METRICS}; while it is
+ * disabled timers and records cost a single field read.
+ * 
+ * A summary of all metrics can be written to the PHP tools console
+ * periodically, see {@link IPHPToolLaunchConstants#PREF_METRICS_SUMMARY_INTERVAL},
+ * and the metrics can be dumped as JSON with {@link #dump(File)}.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolMetrics {
+	/** Duration of a whole tool launch */
+	public static final String LAUNCH = "launch"; //$NON-NLS-1$
+	/** Duration of looking up or creating the launch configuration */
+	public static final String FIND_LAUNCH_CONFIGURATION = "launch.findConfiguration"; //$NON-NLS-1$
+	/** Duration of preparing the php.ini of a launch configuration */
+	public static final String CREATE_PHP_INI = "launch.createPHPINI"; //$NON-NLS-1$
+	/** Duration of starting the PHP process */
+	public static final String PROCESS_START = "process.start"; //$NON-NLS-1$
+	/** Duration of waiting for the PHP process to terminate */
+	public static final String PROCESS_WAIT = "process.wait"; //$NON-NLS-1$
+	/** Duration of refreshing resources after the PHP process terminated */
+	public static final String PROCESS_REFRESH = "process.refresh"; //$NON-NLS-1$
+	/** Duration of a tool run in a pooled PHP worker */
+	public static final String POOLED_EXECUTE = "pooled.execute"; //$NON-NLS-1$
+	/** Duration of a tool run started directly, without the launch framework */
+	public static final String DIRECT_EXECUTE = "direct.execute"; //$NON-NLS-1$
+	/** Duration of parsing the tool output */
+	public static final String PARSE_OUTPUT = "parse.output"; //$NON-NLS-1$
+	/** Size of the tool output */
+	public static final String OUTPUT_SIZE = "output.size"; //$NON-NLS-1$
+	/** Problems reported per parsed file */
+	public static final String PROBLEMS = "parse.problems"; //$NON-NLS-1$
+
+	private static final String KEY_SEPARATOR = "@"; //$NON-NLS-1$
+
+	private static PHPToolMetrics instance;
+
+	private final ConcurrentHashMap<String, PHPToolMetric> metrics = new ConcurrentHashMap<String, PHPToolMetric>();
+	private volatile boolean enabled;
+	private volatile long summaryInterval;
+	private final Job summaryJob;
+
+	private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			if (IPHPToolLaunchConstants.PREF_METRICS.equals(event.getKey())
+					|| IPHPToolLaunchConstants.PREF_METRICS_SUMMARY_INTERVAL
+							.equals(event.getKey()))
+				loadPreferences();
+		}
+	};
+
+	PHPToolMetrics() {
+		summaryJob = new Job("PHP Tool Metrics") { //$NON-NLS-1$
+			protected IStatus run(IProgressMonitor monitor) {
+				if (!metrics.isEmpty())
+					ConsoleSink.getDefault().write(getSummary());
+
+				long interval = summaryInterval;
+				if (enabled && interval > 0)
+					schedule(interval);
+				return Status.OK_STATUS;
+			}
+		};
+		summaryJob.setSystem(true);
+	}
+
+	/**
+	 * Returns the shared registry instance
+	 * 
+	 * @return the shared registry instance
+	 */
+	public static synchronized PHPToolMetrics getDefault() {
+		if (instance == null) {
+			instance = new PHPToolMetrics();
+			getPreferenceNode().addPreferenceChangeListener(
+					instance.preferenceListener);
+			instance.loadPreferences();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stops the periodic summary and drops all metrics.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			getPreferenceNode().removePreferenceChangeListener(
+					instance.preferenceListener);
+			instance.summaryJob.cancel();
+			instance.metrics.clear();
+			instance = null;
+		}
+	}
+
+	private static IEclipsePreferences getPreferenceNode() {
+		return InstanceScope.INSTANCE.getNode(PHPToolCorePlugin.PLUGIN_ID);
+	}
+
+	private void loadPreferences() {
+		enabled = Platform.getPreferencesService().getBoolean(
+				PHPToolCorePlugin.PLUGIN_ID,
+				IPHPToolLaunchConstants.PREF_METRICS, false, null);
+		summaryInterval = Platform.getPreferencesService().getInt(
+				PHPToolCorePlugin.PLUGIN_ID,
+				IPHPToolLaunchConstants.PREF_METRICS_SUMMARY_INTERVAL, 0, null) * 1000L;
+
+		summaryJob.cancel();
+		if (enabled && summaryInterval > 0)
+			summaryJob.schedule(summaryInterval);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables recording until the preference changes.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Starts a timer.
+	 * 
+	 * @return the start time to pass to {@link #stopTimer}, 0 if recording is
+	 *         disabled
+	 */
+	public long startTimer() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the time passed since {@link #startTimer()}.
+	 */
+	public void stopTimer(String name, String tool, long start) {
+		if (start != 0 && enabled)
+			getMetric(name, tool, PHPToolMetric.UNIT_NANOSECONDS).record(
+					System.nanoTime() - start);
+	}
+
+	public void stopTimer(String name, QualifiedName tool, long start) {
+		stopTimer(name, toString(tool), start);
+	}
+
+	/**
+	 * Records a value of the given metric, e.g. the size of a tool output.
+	 */
+	public void record(String name, String tool, String unit, long value) {
+		if (enabled)
+			getMetric(name, tool, unit).record(value);
+	}
+
+	public void record(String name, QualifiedName tool, String unit, long value) {
+		record(name, toString(tool), unit, value);
+	}
+
+	/**
+	 * Returns the metric of the given name and tool, it is created on first
+	 * use.
+	 * 
+	 * @param tool
+	 *            the tool, <code>null</code> for metrics not related to a tool
+	 */
+	public PHPToolMetric getMetric(String name, String tool, String unit) {
+		String key = tool != null ? name + KEY_SEPARATOR + tool : name;
+		PHPToolMetric metric = metrics.get(key);
+		if (metric == null) {
+			PHPToolMetric created = new PHPToolMetric(name, tool, unit);
+			metric = metrics.putIfAbsent(key, created);
+			if (metric == null)
+				metric = created;
+		}
+		return metric;
+	}
+
+	/**
+	 * Returns all metrics, sorted by tool and name.
+	 */
+	public PHPToolMetric[] getMetrics() {
+		List<PHPToolMetric> list = new ArrayList<PHPToolMetric>(metrics
+				.values());
+		Collections.sort(list, new Comparator<PHPToolMetric>() {
+			public int compare(PHPToolMetric m1, PHPToolMetric m2) {
+				String t1 = m1.getTool() != null ? m1.getTool() : ""; //$NON-NLS-1$
+				String t2 = m2.getTool() != null ? m2.getTool() : ""; //$NON-NLS-1$
+				int result = t1.compareTo(t2);
+				return result != 0 ? result : m1.getName().compareTo(
+						m2.getName());
+			}
+		});
+		return list.toArray(new PHPToolMetric[list.size()]);
+	}
+
+	public void reset() {
+		metrics.clear();
+	}
+
+	/**
+	 * Returns a summary of all metrics, one line per metric.
+	 */
+	public String getSummary() {
+		StringBuffer summary = new StringBuffer("PHP tool metrics:\n"); //$NON-NLS-1$
+		for (PHPToolMetric metric : getMetrics()) {
+			summary.append("  ").append(metric).append('\n'); //$NON-NLS-1$
+		}
+		return summary.toString();
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONArray list = new JSONArray();
+		for (PHPToolMetric metric : getMetrics()) {
+			list.put(metric.toJSON());
+		}
+
+		JSONObject json = new JSONObject();
+		json.put("timestamp", System.currentTimeMillis()); //$NON-NLS-1$
+		json.put("metrics", list); //$NON-NLS-1$
+		return json;
+	}
+
+	/**
+	 * Writes all metrics as JSON to the given file.
+	 */
+	public void dump(File file) throws IOException {
+		String json;
+		try {
+			json = toJSON().toString(2);
+		} catch (JSONException e) {
+			throw new IOException(e.getMessage());
+		}
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.UTF_8);
+		try {
+			writer.write(json);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String toString(QualifiedName tool) {
+		return tool != null ? tool.toString() : null;
+	}
+}
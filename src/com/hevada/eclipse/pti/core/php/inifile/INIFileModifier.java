@@ -15,8 +15,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,16 +38,56 @@ public class INIFileModifier {
 
 	class INIFileSection {
 		String name;
-		List<String> lines;
+		int index;
+		List<INIFileLine> lines;
 
-		public INIFileSection(String name) {
+		public INIFileSection(String name, int index) {
 			this.name = name;
-			this.lines = new LinkedList<String>();
+			this.index = index;
+			this.lines = new ArrayList<INIFileLine>();
+		}
+	}
+
+	/**
+	 * A single line of the INI file. Lines are parsed once when they are read
+	 * or added; <code>name</code> and <code>value</code> are only set for
+	 * lines holding an entry. Removed lines stay in place (so positions never
+	 * change) and are skipped when the file is written.
+	 */
+	class INIFileLine {
+		final int sectionIndex;
+		final int position;
+		String text;
+		String name;
+		String value;
+		boolean removed;
+
+		INIFileLine(INIFileSection section, String text) {
+			this.sectionIndex = section.index;
+			this.position = section.lines.size();
+			this.text = text;
+
+			if (text.length() > 0 && isWordChar(text.charAt(0))) {
+				Matcher m = NAME_VAL_PATTERN.matcher(text);
+				if (m.matches()) {
+					name = m.group(1);
+					value = m.group(2);
+				}
+			}
+		}
+
+		boolean isBefore(INIFileLine line) {
+			return sectionIndex < line.sectionIndex
+					|| (sectionIndex == line.sectionIndex && position < line.position);
 		}
 	}
 
 	private File configFile;
 	private List<INIFileSection> sections;
+	// first section for every section name
+	private Map<String, INIFileSection> sectionIndex;
+	// entry lines per entry name, in file order
+	private Map<String, List<INIFileLine>> entryIndex;
 
 	/**
 	 * Create new INI file modifier class instance. If provided INI file doesn't
@@ -69,7 +111,9 @@ public class INIFileModifier {
 	 */
 	public INIFileModifier(File configFile) throws IOException {
 		this.configFile = configFile;
-		this.sections = new LinkedList<INIFileSection>();
+		this.sections = new ArrayList<INIFileSection>();
+		this.sectionIndex = new HashMap<String, INIFileSection>();
+		this.entryIndex = new HashMap<String, List<INIFileLine>>();
 
 		read();
 	}
@@ -142,47 +186,18 @@ public class INIFileModifier {
 			throw new NullPointerException();
 		}
 
+		// removing the old entries leaves nothing to replace in place, the
+		// new entry is always appended to the section
 		if (replace) {
 			removeEntry(sectionName, name, replacePattern);
 		}
 
-		for (INIFileSection section : sections) {
-			if (section.name.equals(sectionName)) {
-				if (replace) {
-					boolean replaced = false;
-
-					for (int i = 0; i < section.lines.size(); ++i) {
-						Matcher m = NAME_VAL_PATTERN.matcher(section.lines
-								.get(i));
-						if (m.matches()) {
-							String oldName = m.group(1);
-							String oldValue = m.group(2);
-							if (oldName.equals(name)
-									&& (replacePattern == null || oldValue
-											.matches(replacePattern))) {
-								section.lines.set(i, name + '='
-										+ quoteString(value));
-								replaced = true;
-								break;
-							}
-						}
-					}
-
-					if (!replaced) {
-						section.lines.add(name + '=' + quoteString(value));
-						return;
-					}
-				} else {
-					section.lines.add(name + '=' + quoteString(value));
-					return;
-				}
-				break;
-			}
+		INIFileSection section = sectionIndex.get(sectionName);
+		if (section == null) {
+			section = addSection(sectionName);
 		}
-
-		INIFileSection section = new INIFileSection(sectionName);
-		section.lines.add(name + '=' + quoteString(value));
-		sections.add(section);
+		addLine(section, new INIFileLine(section, name + '='
+				+ quoteString(value)));
 	}
 
 	/**
@@ -281,22 +296,25 @@ public class INIFileModifier {
 		if (name == null) {
 			throw new NullPointerException();
 		}
+		List<INIFileLine> lines = entryIndex.get(name);
+		if (lines == null) {
+			return false;
+		}
+
+		Pattern pattern = removePattern != null ? Pattern
+				.compile(removePattern) : null;
 		boolean removed = false;
-		for (INIFileSection section : sections) {
-			for (int i = 0; i < section.lines.size(); ++i) {
-				Matcher m = NAME_VAL_PATTERN.matcher(section.lines.get(i));
-				if (m.matches()) {
-					String oldName = m.group(1);
-					String oldValue = m.group(2);
-					if (oldName.equals(name)
-							&& (removePattern == null || oldValue
-									.matches(removePattern))) {
-						section.lines.remove(i--);
-						removed = true;
-					}
-				}
+		for (Iterator<INIFileLine> i = lines.iterator(); i.hasNext();) {
+			INIFileLine line = i.next();
+			if (pattern == null || pattern.matcher(line.value).matches()) {
+				line.removed = true;
+				i.remove();
+				removed = true;
 			}
 		}
+		if (lines.isEmpty()) {
+			entryIndex.remove(name);
+		}
 		return removed;
 	}
 
@@ -350,27 +368,37 @@ public class INIFileModifier {
 		if (name == null) {
 			throw new NullPointerException();
 		}
-		for (INIFileSection section : sections) {
-			if (sectionName == null || section.name.equals(sectionName)) {
-				for (int i = 0; i < section.lines.size(); ++i) {
-					String line = section.lines.get(i);
-					Matcher m = NAME_VAL_PATTERN.matcher(line);
-					if (m.matches()) {
-						String oldName = m.group(1);
-						String oldValue = m.group(2);
-						if (!line.startsWith(";")
-								&& oldName.equals(name)
-								&& (commentPattern == null || oldValue
-										.matches(commentPattern))) {
-							section.lines.set(i, ';' + line);
-						}
-					}
-				}
-				if (sectionName != null) {
-					break;
-				}
+		List<INIFileLine> lines = entryIndex.get(name);
+		if (lines == null) {
+			return;
+		}
+
+		int index = -1;
+		if (sectionName != null) {
+			INIFileSection section = sectionIndex.get(sectionName);
+			if (section == null) {
+				return;
+			}
+			index = section.index;
+		}
+
+		Pattern pattern = commentPattern != null ? Pattern
+				.compile(commentPattern) : null;
+		for (Iterator<INIFileLine> i = lines.iterator(); i.hasNext();) {
+			INIFileLine line = i.next();
+			if ((index == -1 || line.sectionIndex == index)
+					&& (pattern == null || pattern.matcher(line.value)
+							.matches())) {
+				// a commented line is no entry anymore
+				line.text = ';' + line.text;
+				line.name = null;
+				line.value = null;
+				i.remove();
 			}
 		}
+		if (lines.isEmpty()) {
+			entryIndex.remove(name);
+		}
 	}
 
 	/**
@@ -389,29 +417,68 @@ public class INIFileModifier {
 	 */
 	protected void read() throws IOException {
 		BufferedReader r = new BufferedReader(new FileReader(configFile));
-		String line;
-		INIFileSection currentSection = new INIFileSection(GLOBAL_SECTION);
-		sections.add(currentSection);
-		while ((line = r.readLine()) != null) {
-			line = line.trim();
-			Matcher sm = SECTION_PATTERN.matcher(line);
-			if (sm.matches()) {
-				String sectionName = sm.group(1);
-				currentSection = new INIFileSection(sectionName);
-				sections.add(currentSection);
-			} else {
-				Matcher nvm = NAME_VAL_PATTERN.matcher(line);
+		try {
+			String line;
+			INIFileSection currentSection = addSection(GLOBAL_SECTION);
+			while ((line = r.readLine()) != null) {
+				line = line.trim();
+				if (line.startsWith("[")) { //$NON-NLS-1$
+					Matcher sm = SECTION_PATTERN.matcher(line);
+					if (sm.matches()) {
+						currentSection = addSection(sm.group(1));
+						continue;
+					}
+				}
+
+				INIFileLine iniLine = new INIFileLine(currentSection, line);
 				// check only for double "include_path" (double include_path
 				// problem) since other attributes like "extension" are allowed
 				// more then once.
-				if (nvm.matches() && "include_path".equals(nvm.group(1))) {
-					removeEntry(nvm.group(1), null);
+				if ("include_path".equals(iniLine.name)) { //$NON-NLS-1$
+					removeEntry(iniLine.name, null);
 				}
 
-				currentSection.lines.add(line);
+				addLine(currentSection, iniLine);
 			}
+		} finally {
+			r.close();
+		}
+	}
+
+	private INIFileSection addSection(String name) {
+		INIFileSection section = new INIFileSection(name, sections.size());
+		sections.add(section);
+		if (!sectionIndex.containsKey(name)) {
+			sectionIndex.put(name, section);
+		}
+		return section;
+	}
+
+	private void addLine(INIFileSection section, INIFileLine line) {
+		section.lines.add(line);
+		if (line.name != null) {
+			addToIndex(line);
+		}
+	}
+
+	private void addToIndex(INIFileLine line) {
+		List<INIFileLine> lines = entryIndex.get(line.name);
+		if (lines == null) {
+			lines = new ArrayList<INIFileLine>(1);
+			entryIndex.put(line.name, lines);
+		}
+
+		// lines are mostly appended to the last section, keep file order
+		int i = lines.size();
+		while (i > 0 && line.isBefore(lines.get(i - 1))) {
+			--i;
 		}
-		r.close();
+		lines.add(i, line);
+	}
+
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '_';
 	}
 
 	/**
@@ -425,8 +492,10 @@ public class INIFileModifier {
 			if (section.name != GLOBAL_SECTION) {
 				w.println('[' + section.name + ']');
 			}
-			for (String line : section.lines) {
-				w.println(line);
+			for (INIFileLine line : section.lines) {
+				if (!line.removed) {
+					w.println(line.text);
+				}
 			}
 		}
 		w.close();
@@ -460,20 +529,12 @@ public class INIFileModifier {
 			throw new NullPointerException();
 		}
 
-		for (INIFileSection section : sections) {
-			for (int i = 0; i < section.lines.size(); ++i) {
-				Matcher m = NAME_VAL_PATTERN.matcher(section.lines.get(i));
-				if (m.matches()) {
-					String oldName = m.group(1);
-					String oldValue = m.group(2);
-					if (oldName.equals(name)) {
-						return removeQuotes(oldValue);
-					}
-				}
-			}
+		List<INIFileLine> lines = entryIndex.get(name);
+		if (lines == null) {
+			return null;
 		}
 
-		return null;
+		return removeQuotes(lines.get(0).value);
 	}
 
 	/**
@@ -506,16 +567,10 @@ public class INIFileModifier {
 
 		List<String> entries = new ArrayList<String>();
 
-		for (INIFileSection section : sections) {
-			for (int i = 0; i < section.lines.size(); ++i) {
-				Matcher m = NAME_VAL_PATTERN.matcher(section.lines.get(i));
-				if (m.matches()) {
-					String oldName = m.group(1);
-					String oldValue = m.group(2);
-					if (oldName.equals(name)) {
-						entries.add(removeQuotes(oldValue));
-					}
-				}
+		List<INIFileLine> lines = entryIndex.get(name);
+		if (lines != null) {
+			for (INIFileLine line : lines) {
+				entries.add(removeQuotes(line.value));
 			}
 		}
 
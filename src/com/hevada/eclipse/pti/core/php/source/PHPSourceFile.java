@@ -10,7 +10,7 @@ package com.hevada.eclipse.pti.core.php.source;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.io.Reader;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -22,9 +22,9 @@ import com.hevada.eclipse.pti.core.PHPToolkitUtil;
 public class PHPSourceFile implements ISourceFile {
 
 	private final IFile file;
-	private ArrayList<Integer> lineStarts;
-	private ArrayList<Integer> lineEnds;
-	private ArrayList<Integer> lineStartTabCount;
+	private int[] lineStarts;
+	private int[] lineEnds;
+	private int[] lineStartTabCount;
 	private int linesCount;
 	/**
 	 * @since 1.4.0
@@ -39,51 +39,30 @@ public class PHPSourceFile implements ISourceFile {
 	}
 
 	private void determineLinePositions(IFile file) throws CoreException, IOException {
-		lineStarts = new ArrayList<Integer>();
-		lineEnds = new ArrayList<Integer>();
-		lineStartTabCount = new ArrayList<Integer>();
-
-		InputStreamReader isr;
-		isr = new InputStreamReader(file.getContents(), ResourcesPlugin.getEncoding());
-
-		int last = -1;
-		int i = 0;
-		int c;
-		boolean countTabs = true;
-		int tabCount = 0;
-		while ((c = isr.read()) != -1) {
-			if ((char) c == '\n') {
-				lineStarts.add(Integer.valueOf(last + 1));
-				lineEnds.add(Integer.valueOf(i));
-				lineStartTabCount.add(Integer.valueOf(tabCount));
-				++linesCount;
-				last = i;
-				countTabs = true;
-				tabCount = 0;
-			} else if (countTabs && (char) c == '\t') {
-				++tabCount;
-			} else if ((char) c != ' ') {
-				countTabs = false;
-			}
-			i++;
+		PHPSourceLineScanner scanner = new PHPSourceLineScanner();
+		Reader reader = new InputStreamReader(file.getContents(), ResourcesPlugin.getEncoding());
+		try {
+			scanner.scan(reader);
+		} finally {
+			reader.close();
 		}
 
-		lineStarts.add(Integer.valueOf(last + 1));
-		lineEnds.add(Integer.valueOf(i));
-		lineStartTabCount.add(Integer.valueOf(tabCount));
-		++linesCount;
+		lineStarts = scanner.getLineStarts();
+		lineEnds = scanner.getLineEnds();
+		lineStartTabCount = scanner.getLineStartTabCount();
+		linesCount = scanner.getNumberOfLines();
 	}
 
 	public int lineStart(int lineNumber) throws IndexOutOfBoundsException {
-		return lineStarts.get(lineNumber - 1);
+		return lineStarts[lineNumber - 1];
 	}
 
 	public int lineEnd(int lineNumber) throws IndexOutOfBoundsException {
-		return lineEnds.get(lineNumber - 1);
+		return lineEnds[lineNumber - 1];
 	}
 
 	public int lineStartTabCount(int lineNumber) throws IndexOutOfBoundsException {
-		return lineStartTabCount.get(lineNumber - 1);
+		return lineStartTabCount[lineNumber - 1];
 	}
 
 	public IFile getFile() {
@@ -105,18 +84,25 @@ public class PHPSourceFile implements ISourceFile {
 	 * @since 1.4.0
 	 */
 	public int findLineNumberForOffset(int offset) throws IndexOutOfBoundsException {
-		if (offset < 0)
-			throw new IndexOutOfBoundsException();
-		if (offset == 0)
-			return 1;
-
-		int count = lineEnds.size();
-		for (int i = 0; i < count; ++i) {
-			int end = lineEnds.get(i);
-			if (end > offset)
-				return i + 1;
-		}
+		return PHPSourceLineScanner.findLineNumber(lineEnds, offset);
+	}
 
-		throw new IndexOutOfBoundsException();
+	/**
+	 * Maps a number of offsets to their line numbers at once, see
+	 * {@link #findLineNumberForOffset(int)}.
+	 * 
+	 * @param offsets
+	 *            the offsets, in any order
+	 * @return the line numbers, in the order of <code>offsets</code>
+	 * @throws IndexOutOfBoundsException
+	 *             if one of the offsets is outside the file
+	 * @since 1.7.0
+	 */
+	public int[] offsetsToLines(int[] offsets) throws IndexOutOfBoundsException {
+		int[] lines = new int[offsets.length];
+		for (int i = 0; i < offsets.length; ++i) {
+			lines[i] = findLineNumberForOffset(offsets[i]);
+		}
+		return lines;
 	}
 }
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.php.source;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import com.hevada.eclipse.pti.ui.Logger;
+
+/**
+ * Workspace wide cache of {@link PHPSourceFile} instances, so several tools
+ * running over the same file share its line tables. Entries are bound to the
+ * modification stamp of the file and dropped by a resource change listener
+ * when the file changes or goes away. Values are softly referenced and the
+ * number of entries is bounded by {@link #getMaxEntries()}.
+ * 
+ * @since 1.7.0
+ */
+public class PHPSourceFileCache implements IResourceChangeListener {
+	private static PHPSourceFileCache instance;
+
+	private int maxEntries = 500;
+
+	private final Map<IFile, CacheEntry> entries = new LinkedHashMap<IFile, CacheEntry>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<IFile, CacheEntry> eldest) {
+			return size() > maxEntries;
+		}
+	};
+
+	private static class CacheEntry {
+		final long modificationStamp;
+		final SoftReference<PHPSourceFile> sourceFile;
+
+		CacheEntry(long modificationStamp, PHPSourceFile sourceFile) {
+			this.modificationStamp = modificationStamp;
+			this.sourceFile = new SoftReference<PHPSourceFile>(sourceFile);
+		}
+	}
+
+	/**
+	 * Returns the shared cache instance
+	 * 
+	 * @return the shared cache instance
+	 */
+	public static synchronized PHPSourceFileCache getDefault() {
+		if (instance == null) {
+			instance = new PHPSourceFileCache();
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(
+					instance,
+					IResourceChangeEvent.POST_CHANGE
+							| IResourceChangeEvent.PRE_CLOSE
+							| IResourceChangeEvent.PRE_DELETE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for resource changes and drops all entries.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+					instance);
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the source file for the given file, reading it only if it is
+	 * not cached or has changed since.
+	 */
+	public PHPSourceFile get(IFile file) throws CoreException, IOException {
+		long stamp = file.getModificationStamp();
+
+		synchronized (this) {
+			CacheEntry entry = entries.get(file);
+			if (entry != null && entry.modificationStamp == stamp) {
+				PHPSourceFile sourceFile = entry.sourceFile.get();
+				if (sourceFile != null)
+					return sourceFile;
+			}
+		}
+
+		// read outside the lock, a concurrent read of the same file is cheaper
+		// than blocking all other files
+		PHPSourceFile sourceFile = new PHPSourceFile(file);
+
+		if (stamp != IResource.NULL_STAMP) {
+			synchronized (this) {
+				entries.put(file, new CacheEntry(stamp, sourceFile));
+			}
+		}
+
+		return sourceFile;
+	}
+
+	public synchronized void remove(IFile file) {
+		entries.remove(file);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+		Iterator<IFile> i = entries.keySet().iterator();
+		while (entries.size() > this.maxEntries && i.hasNext()) {
+			i.next();
+			i.remove();
+		}
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		if (event.getType() != IResourceChangeEvent.POST_CHANGE) {
+			if (event.getResource() instanceof IProject)
+				removeProject((IProject) event.getResource());
+			return;
+		}
+
+		IResourceDelta rootDelta = event.getDelta();
+		synchronized (this) {
+			if (rootDelta == null || entries.isEmpty())
+				return;
+		}
+
+		try {
+			rootDelta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					IResource resource = delta.getResource();
+					if (resource.getType() != IResource.FILE)
+						return true;
+
+					if (delta.getKind() == IResourceDelta.REMOVED
+							|| (delta.getFlags() & (IResourceDelta.CONTENT
+									| IResourceDelta.REPLACED | IResourceDelta.ENCODING)) != 0) {
+						remove((IFile) resource);
+					}
+					return false;
+				}
+			});
+		} catch (CoreException e) {
+			Logger.logException(e);
+		}
+	}
+
+	private synchronized void removeProject(IProject project) {
+		Iterator<IFile> i = entries.keySet().iterator();
+		while (i.hasNext()) {
+			if (project.equals(i.next().getProject()))
+				i.remove();
+		}
+	}
+}
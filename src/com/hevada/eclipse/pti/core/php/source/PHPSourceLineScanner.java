@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.php.source;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Computes the line tables of a source file. The content is read in large
+ * chunks, lines are terminated by <code>\n</code>, <code>\r\n</code> or
+ * <code>\r</code>. A line end is the offset of its line delimiter, the next
+ * line starts behind the delimiter.
+ * 
+ * @since 1.7.0
+ */
+public class PHPSourceLineScanner {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_LINE_CAPACITY = 256;
+
+	private int[] lineStarts = new int[INITIAL_LINE_CAPACITY];
+	private int[] lineEnds = new int[INITIAL_LINE_CAPACITY];
+	private int[] lineStartTabCount = new int[INITIAL_LINE_CAPACITY];
+	private int linesCount;
+
+	/**
+	 * Scans the whole content of the given reader. The reader is not closed.
+	 */
+	public void scan(Reader reader) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int offset = 0;
+		int lineStart = 0;
+		boolean countTabs = true;
+		int tabCount = 0;
+		boolean afterCR = false;
+
+		int count;
+		while ((count = reader.read(buffer)) != -1) {
+			for (int i = 0; i < count; ++i) {
+				char c = buffer[i];
+				if (c == '\n') {
+					// the \n of a \r\n, the line has already been ended
+					if (!afterCR)
+						addLine(lineStart, offset + i, tabCount);
+					lineStart = offset + i + 1;
+					countTabs = true;
+					tabCount = 0;
+				} else if (c == '\r') {
+					addLine(lineStart, offset + i, tabCount);
+					lineStart = offset + i + 1;
+					countTabs = true;
+					tabCount = 0;
+				} else if (countTabs && c == '\t') {
+					++tabCount;
+				} else if (c != ' ') {
+					countTabs = false;
+				}
+				afterCR = c == '\r';
+			}
+			offset += count;
+		}
+
+		addLine(lineStart, offset, tabCount);
+
+		// trim the tables, so lines past the end are out of bounds
+		lineStarts = Arrays.copyOf(lineStarts, linesCount);
+		lineEnds = Arrays.copyOf(lineEnds, linesCount);
+		lineStartTabCount = Arrays.copyOf(lineStartTabCount, linesCount);
+	}
+
+	private void addLine(int start, int end, int tabCount) {
+		if (linesCount == lineStarts.length) {
+			int capacity = linesCount * 2;
+			lineStarts = Arrays.copyOf(lineStarts, capacity);
+			lineEnds = Arrays.copyOf(lineEnds, capacity);
+			lineStartTabCount = Arrays.copyOf(lineStartTabCount, capacity);
+		}
+
+		lineStarts[linesCount] = start;
+		lineEnds[linesCount] = end;
+		lineStartTabCount[linesCount] = tabCount;
+		++linesCount;
+	}
+
+	/**
+	 * Returns the number of the line containing the given offset, starting at
+	 * 1, by a binary search of the line ends.
+	 * 
+	 * @param lineEnds
+	 *            the line ends as computed by {@link #scan(Reader)}
+	 * @throws IndexOutOfBoundsException
+	 *             if the offset is negative or behind the last line
+	 */
+	public static int findLineNumber(int[] lineEnds, int offset)
+			throws IndexOutOfBoundsException {
+		if (offset < 0)
+			throw new IndexOutOfBoundsException();
+		if (offset == 0)
+			return 1;
+
+		// first line ending behind the offset
+		int low = 0;
+		int high = lineEnds.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (lineEnds[mid] > offset)
+				high = mid - 1;
+			else
+				low = mid + 1;
+		}
+
+		if (low == lineEnds.length)
+			throw new IndexOutOfBoundsException();
+
+		return low + 1;
+	}
+
+	public int[] getLineStarts() {
+		return lineStarts;
+	}
+
+	public int[] getLineEnds() {
+		return lineEnds;
+	}
+
+	public int[] getLineStartTabCount() {
+		return lineStartTabCount;
+	}
+
+	public int getNumberOfLines() {
+		return linesCount;
+	}
+}
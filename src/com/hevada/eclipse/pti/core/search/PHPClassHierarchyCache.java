@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.search.SearchMatch;
+import com.hevada.eclipse.pti.core.PHPToolkitUtil;
+
+/**
+ * Per project cache of the resolved super classes of PHP classes. Classes are
+ * identified by their simple name, like {@link PHPToolkitUtil#hasSuperClass}
+ * always did. The ancestors of a class are resolved lazily through
+ * {@link PHPSearchEngine#findClass(String, IProject)} and remembered
+ * until a model change in the project drops the whole project cache.
+ * Inheritance cycles in broken code end the resolution instead of recursing
+ * forever.
+ * 
+ * @since 1.7.0
+ */
+public class PHPClassHierarchyCache implements IElementChangedListener {
+	private static PHPClassHierarchyCache instance;
+
+	private final Map<IProject, Map<String, Set<String>>> projects = new HashMap<IProject, Map<String, Set<String>>>();
+	// incremented on every clear, results of older resolutions are dropped
+	private long generation;
+
+	/**
+	 * State of a single resolution, the classes on the current path and
+	 * whether a cycle has been hit.
+	 */
+	private static class Resolution {
+		final IProject project;
+		final long generation;
+		final Set<String> visiting = new HashSet<String>();
+		int cycles;
+
+		Resolution(IProject project, long generation) {
+			this.project = project;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Returns the shared cache instance
+	 * 
+	 * @return the shared cache instance
+	 */
+	public static synchronized PHPClassHierarchyCache getDefault() {
+		if (instance == null) {
+			instance = new PHPClassHierarchyCache();
+			DLTKCore.addElementChangedListener(instance,
+					ElementChangedEvent.POST_CHANGE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for model changes and drops all cached hierarchies.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			DLTKCore.removeElementChangedListener(instance);
+			instance.clear();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the simple names of all super classes of the given class, direct
+	 * ones first.
+	 * 
+	 * @param project
+	 *            the project the class is looked up in
+	 * @param className
+	 *            the simple class name
+	 */
+	public Set<String> getSuperClasses(IProject project, String className) {
+		return resolve(createResolution(project), className);
+	}
+
+	/**
+	 * Returns the simple names of all super classes of the class declared in
+	 * the given source module, direct ones first.
+	 */
+	public Set<String> getSuperClasses(ISourceModule module) {
+		String[] superClasses = PHPToolkitUtil.getSuperClassNames(module);
+		if (superClasses.length == 0)
+			return Collections.emptySet();
+
+		Resolution resolution = createResolution(module.getScriptProject()
+				.getProject());
+		Set<String> ancestors = new LinkedHashSet<String>();
+		for (String superClass : superClasses) {
+			ancestors.add(superClass);
+			ancestors.addAll(resolve(resolution, superClass));
+		}
+
+		return ancestors;
+	}
+
+	public synchronized void clear() {
+		projects.clear();
+		++generation;
+	}
+
+	public synchronized void clear(IProject project) {
+		projects.remove(project);
+		++generation;
+	}
+
+	public void elementChanged(ElementChangedEvent event) {
+		IModelElementDelta delta = event.getDelta();
+		if (delta == null)
+			return;
+
+		synchronized (this) {
+			if (projects.isEmpty())
+				return;
+		}
+
+		// a changed class may be the ancestor of any other class in the
+		// project, so every change drops the hierarchies of the project
+		for (IModelElementDelta projectDelta : delta.getAffectedChildren()) {
+			IModelElement element = projectDelta.getElement();
+			if (element instanceof IScriptProject)
+				clear(((IScriptProject) element).getProject());
+		}
+	}
+
+	private synchronized Resolution createResolution(IProject project) {
+		return new Resolution(project, generation);
+	}
+
+	private Set<String> resolve(Resolution resolution, String className) {
+		Set<String> ancestors = getCached(resolution.project, className);
+		if (ancestors != null)
+			return ancestors;
+
+		if (!resolution.visiting.add(className)) {
+			++resolution.cycles;
+			return Collections.emptySet();
+		}
+
+		int cycles = resolution.cycles;
+		ancestors = new LinkedHashSet<String>();
+		try {
+			SearchMatch[] matches = PHPSearchEngine.findClass(className,
+					resolution.project);
+			for (SearchMatch match : matches) {
+				IResource resource = match.getResource();
+				ISourceModule module = PHPToolkitUtil.getSourceModule(resource);
+				if (module == null)
+					continue;
+
+				for (String superClass : PHPToolkitUtil
+						.getSuperClassNames(module)) {
+					ancestors.add(superClass);
+					ancestors.addAll(resolve(resolution, superClass));
+				}
+			}
+		} finally {
+			resolution.visiting.remove(className);
+		}
+
+		ancestors = Collections.unmodifiableSet(ancestors);
+		// a result cut short by a cycle is incomplete for classes further up
+		// the path, only keep results of cycle free sub hierarchies
+		if (resolution.cycles == cycles)
+			putCached(resolution, className, ancestors);
+
+		return ancestors;
+	}
+
+	private synchronized Set<String> getCached(IProject project,
+			String className) {
+		Map<String, Set<String>> classes = projects.get(project);
+		return classes != null ? classes.get(className) : null;
+	}
+
+	private synchronized void putCached(Resolution resolution,
+			String className, Set<String> ancestors) {
+		if (resolution.generation != generation)
+			return;
+
+		Map<String, Set<String>> classes = projects.get(resolution.project);
+		if (classes == null) {
+			classes = new HashMap<String, Set<String>>();
+			projects.put(resolution.project, classes);
+		}
+		classes.put(className, ancestors);
+	}
+}
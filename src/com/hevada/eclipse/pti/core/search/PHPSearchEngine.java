@@ -53,6 +53,32 @@ public class PHPSearchEngine {
 		return findClass(className, scope, SearchPattern.R_EXACT_MATCH);
 	}
 
+	/**
+	 * Finds the class in the scope of the given project. Exact, prefix and
+	 * camel case lookups are answered from the {@link PHPTypeIndex} of the
+	 * project once it has been built, a regular search is run otherwise.
+	 * 
+	 * @since 1.7.0
+	 */
+	public static SearchMatch[] findClass(String className, IProject project) {
+		return findClass(className, project, SearchPattern.R_EXACT_MATCH);
+	}
+
+	/**
+	 * @see #findClass(String, IProject)
+	 * @since 1.7.0
+	 */
+	public static SearchMatch[] findClass(String className, IProject project, int matchRule) {
+		PHPTypeIndex index = PHPTypeIndexManager.getDefault().getIndex(project);
+		if (index != null) {
+			SearchMatch[] matches = index.find(className, matchRule);
+			if (matches != null)
+				return matches;
+		}
+
+		return findClass(className, createProjectScope(project), matchRule);
+	}
+
 	public static SearchMatch[] findClass(String className, IDLTKSearchScope scope, int matchRule) {
 		PatternQuerySpecification querySpec = new PatternQuerySpecification(className, IDLTKSearchConstants.TYPE,
 				false, IDLTKSearchConstants.DECLARATIONS, scope, "");
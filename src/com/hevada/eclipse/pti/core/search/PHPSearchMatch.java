@@ -8,13 +8,22 @@
 
 package com.hevada.eclipse.pti.core.search;
 
+import java.text.CollationKey;
+import java.text.Collator;
+
 import org.eclipse.core.resources.IResource;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IType;
 import org.eclipse.dltk.internal.core.SourceType;
-import com.hevada.eclipse.pti.core.PHPToolkitUtil;
 
 public class PHPSearchMatch {
+	private static final Collator COLLATOR = Collator.getInstance();
+
 	private SourceType element;
 	private IResource resource;
+	private String label;
+	private String text;
+	private CollationKey collationKey;
 
 	public PHPSearchMatch(SourceType element, IResource resource) {
 		this.element = element;
@@ -29,10 +38,43 @@ public class PHPSearchMatch {
 		return resource;
 	}
 
+	/**
+	 * Returns the class name including its namespace. It is computed from the
+	 * element handle once, without accessing the DLTK model.
+	 * 
+	 * @since 1.7.0
+	 */
+	public String getLabel() {
+		if (label == null) {
+			IModelElement parent = element.getParent();
+			// namespaces are the parent types of the classes they contain
+			if (parent instanceof IType)
+				label = parent.getElementName() + "\\" //$NON-NLS-1$
+						+ element.getElementName();
+			else
+				label = element.getElementName();
+		}
+		return label;
+	}
+
+	/**
+	 * Returns the collation key of {@link #toString()} for sorting matches.
+	 * 
+	 * @since 1.7.0
+	 */
+	public CollationKey getCollationKey() {
+		if (collationKey == null) {
+			// collators are not thread safe
+			synchronized (COLLATOR) {
+				collationKey = COLLATOR.getCollationKey(toString());
+			}
+		}
+		return collationKey;
+	}
+
 	public String toString() {
-		String name = PHPToolkitUtil.getClassNameWithNamespace(element
-				.getSourceModule());
-		name += " - " + resource.getFullPath().toOSString();
-		return name;
+		if (text == null)
+			text = getLabel() + " - " + resource.getFullPath().toOSString();
+		return text;
 	}
 }
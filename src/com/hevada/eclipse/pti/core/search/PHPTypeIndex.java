@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IType;
+import org.eclipse.dltk.core.search.IDLTKSearchScope;
+import org.eclipse.dltk.core.search.SearchMatch;
+import org.eclipse.dltk.core.search.SearchPattern;
+
+/**
+ * In-memory index of the PHP types visible in a project, i.e. the types in
+ * the project search scope. Types are found by their simple or namespace
+ * qualified name, case insensitive like PHP class names are. Instances are
+ * built and kept up to date by {@link PHPTypeIndexManager}.
+ * 
+ * @since 1.7.0
+ */
+public class PHPTypeIndex {
+	private static final SearchMatch[] NO_MATCHES = new SearchMatch[0];
+
+	private final IProject project;
+	private final IDLTKSearchScope scope;
+
+	// lower case simple name -> declarations
+	private final TreeMap<String, List<SearchMatch>> simpleNames = new TreeMap<String, List<SearchMatch>>();
+	// lower case qualified name -> declarations
+	private final Map<String, List<SearchMatch>> qualifiedNames = new HashMap<String, List<SearchMatch>>();
+	// source module -> declarations, to replace them when the module changes
+	private final Map<IModelElement, List<SearchMatch>> modules = new HashMap<IModelElement, List<SearchMatch>>();
+
+	PHPTypeIndex(IProject project, IDLTKSearchScope scope) {
+		this.project = project;
+		this.scope = scope;
+	}
+
+	/**
+	 * Returns the project of the index, <code>null</code> for the workspace
+	 * index.
+	 */
+	public IProject getProject() {
+		return project;
+	}
+
+	IDLTKSearchScope getScope() {
+		return scope;
+	}
+
+	/**
+	 * Returns the type declarations matching the given name.
+	 * 
+	 * @param name
+	 *            a simple or qualified class name, a prefix or a camel case
+	 *            pattern depending on <code>matchRule</code>
+	 * @param matchRule
+	 *            one of {@link SearchPattern#R_EXACT_MATCH},
+	 *            {@link SearchPattern#R_PREFIX_MATCH} or
+	 *            {@link SearchPattern#R_CAMELCASE_MATCH}
+	 * @return the matches or <code>null</code> if the match rule is not
+	 *         supported by the index
+	 */
+	public synchronized SearchMatch[] find(String name, int matchRule) {
+		if (name.startsWith("\\")) //$NON-NLS-1$
+			name = name.substring(1);
+		String key = name.toLowerCase(Locale.ENGLISH);
+
+		switch (matchRule) {
+		case SearchPattern.R_EXACT_MATCH:
+			List<SearchMatch> matches = key.indexOf('\\') >= 0 ? qualifiedNames
+					.get(key) : simpleNames.get(key);
+			return matches != null ? matches
+					.toArray(new SearchMatch[matches.size()]) : NO_MATCHES;
+
+		case SearchPattern.R_PREFIX_MATCH:
+			return collect(simpleNames.subMap(key, key + Character.MAX_VALUE),
+					null);
+
+		case SearchPattern.R_CAMELCASE_MATCH:
+			if (key.length() == 0)
+				return collect(simpleNames, null);
+			// the first character always matches case insensitive
+			char first = key.charAt(0);
+			return collect(simpleNames.subMap(String.valueOf(first), String
+					.valueOf((char) (first + 1))), name);
+
+		default:
+			return null;
+		}
+	}
+
+	public synchronized int size() {
+		int size = 0;
+		for (List<SearchMatch> matches : modules.values()) {
+			size += matches.size();
+		}
+		return size;
+	}
+
+	private SearchMatch[] collect(SortedMap<String, List<SearchMatch>> names,
+			String camelCasePattern) {
+		List<SearchMatch> result = new ArrayList<SearchMatch>();
+		for (List<SearchMatch> matches : names.values()) {
+			for (SearchMatch match : matches) {
+				if (camelCasePattern == null
+						|| camelCaseMatch(camelCasePattern, getTypeName(match)))
+					result.add(match);
+			}
+		}
+		return result.toArray(new SearchMatch[result.size()]);
+	}
+
+	/**
+	 * Replaces the declarations of the given source module.
+	 */
+	synchronized void setModule(IModelElement module, SearchMatch[] matches) {
+		removeModule(module);
+		if (matches.length == 0)
+			return;
+
+		List<SearchMatch> moduleMatches = new ArrayList<SearchMatch>(
+				matches.length);
+		for (SearchMatch match : matches) {
+			if (!(match.getElement() instanceof IType))
+				continue;
+
+			moduleMatches.add(match);
+			add(simpleNames, toKey(getTypeName(match)), match);
+			add(qualifiedNames, toKey(getQualifiedTypeName(match)), match);
+		}
+		if (!moduleMatches.isEmpty())
+			modules.put(module, moduleMatches);
+	}
+
+	synchronized void removeModule(IModelElement module) {
+		List<SearchMatch> matches = modules.remove(module);
+		if (matches == null)
+			return;
+
+		for (SearchMatch match : matches) {
+			remove(simpleNames, toKey(getTypeName(match)), match);
+			remove(qualifiedNames, toKey(getQualifiedTypeName(match)), match);
+		}
+	}
+
+	synchronized boolean containsModule(IModelElement module) {
+		return modules.containsKey(module);
+	}
+
+	static IModelElement getModule(SearchMatch match) {
+		return ((IModelElement) match.getElement())
+				.getAncestor(IModelElement.SOURCE_MODULE);
+	}
+
+	private static String getTypeName(SearchMatch match) {
+		return ((IType) match.getElement()).getElementName();
+	}
+
+	private static String getQualifiedTypeName(SearchMatch match) {
+		IType type = (IType) match.getElement();
+		IModelElement parent = type.getParent();
+		// namespaces are the parent types of the classes they contain
+		if (parent instanceof IType)
+			return parent.getElementName() + '\\' + type.getElementName();
+
+		return type.getElementName();
+	}
+
+	private static String toKey(String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static void add(Map<String, List<SearchMatch>> map, String key,
+			SearchMatch match) {
+		List<SearchMatch> matches = map.get(key);
+		if (matches == null) {
+			matches = new ArrayList<SearchMatch>(1);
+			map.put(key, matches);
+		}
+		matches.add(match);
+	}
+
+	private static void remove(Map<String, List<SearchMatch>> map, String key,
+			SearchMatch match) {
+		List<SearchMatch> matches = map.get(key);
+		if (matches == null)
+			return;
+
+		for (Iterator<SearchMatch> i = matches.iterator(); i.hasNext();) {
+			if (i.next() == match)
+				i.remove();
+		}
+		if (matches.isEmpty())
+			map.remove(key);
+	}
+
+	/**
+	 * Matches camel case patterns like "PTS" or "PToSe" against names
+	 * like "PHPToolSearch". Every upper case letter or digit of the pattern
+	 * starts a new part which must be the prefix of a part of the name, in
+	 * the same order. The first character is compared case insensitive.
+	 */
+	static boolean camelCaseMatch(String pattern, String name) {
+		if (pattern.length() == 0)
+			return true;
+		if (name.length() == 0
+				|| Character.toLowerCase(pattern.charAt(0)) != Character
+						.toLowerCase(name.charAt(0)))
+			return false;
+
+		int p = 1;
+		int n = 1;
+		while (p < pattern.length()) {
+			char c = pattern.charAt(p);
+			if (n < name.length() && name.charAt(n) == c) {
+				++p;
+				++n;
+			} else if (isPartStart(c)) {
+				// skip to the next part of the name starting with c
+				++n;
+				while (n < name.length() && name.charAt(n) != c) {
+					++n;
+				}
+				if (n == name.length())
+					return false;
+			} else {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isPartStart(char c) {
+		return Character.isUpperCase(c) || Character.isDigit(c);
+	}
+}
@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.search.IDLTKSearchScope;
+import org.eclipse.dltk.core.search.SearchEngine;
+import org.eclipse.dltk.core.search.SearchMatch;
+import org.eclipse.dltk.core.search.SearchPattern;
+
+/**
+ * Builds and maintains a {@link PHPTypeIndex} per project. An index is built
+ * in the background on first request, from a single search for all type
+ * declarations in the project scope. Afterwards it is kept up to date from
+ * DLTK element deltas: changed source modules are searched again on their
+ * own, structural changes of a project (build path, fragments) drop its
+ * index so it gets rebuilt on the next request.
+ * 
+ * Besides the project indexes there is one index of the whole workspace,
+ * see {@link #getWorkspaceIndex()}. It is kept under the <code>null</code>
+ * project.
+ * 
+ * An index is only handed out while it is complete and has no pending
+ * updates, callers fall back to a regular search otherwise.
+ * 
+ * @since 1.7.0
+ */
+public class PHPTypeIndexManager implements IElementChangedListener {
+	private static final String ALL_TYPES = "*"; //$NON-NLS-1$
+
+	private static PHPTypeIndexManager instance;
+
+	private final Map<IProject, PHPTypeIndex> indexes = new HashMap<IProject, PHPTypeIndex>();
+	private final Set<IProject> building = new LinkedHashSet<IProject>();
+	// projects currently searched, and those of them changed meanwhile
+	private final Set<IProject> searching = new HashSet<IProject>();
+	private final Set<IProject> invalidated = new HashSet<IProject>();
+	// changed source modules per project index, true if the module is gone
+	private final Map<IProject, Map<IModelElement, Boolean>> pendingUpdates = new HashMap<IProject, Map<IModelElement, Boolean>>();
+	private final Job buildJob = new BuildJob();
+	private final Job updateJob = new UpdateJob();
+
+	private class BuildJob extends Job {
+		BuildJob() {
+			super("Indexing PHP types"); //$NON-NLS-1$
+			setSystem(true);
+			setPriority(Job.DECORATE);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			IProject project;
+			while ((project = nextProjectToBuild()) != null) {
+				if (monitor.isCanceled())
+					return Status.CANCEL_STATUS;
+
+				buildIndex(project);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private class UpdateJob extends Job {
+		UpdateJob() {
+			super("Updating PHP type index"); //$NON-NLS-1$
+			setSystem(true);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			Map<IProject, Map<IModelElement, Boolean>> updates;
+			synchronized (PHPTypeIndexManager.this) {
+				updates = new HashMap<IProject, Map<IModelElement, Boolean>>(
+						pendingUpdates);
+			}
+
+			for (Map.Entry<IProject, Map<IModelElement, Boolean>> entry : updates
+					.entrySet()) {
+				updateIndex(entry.getKey(), entry.getValue());
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Returns the shared manager instance
+	 * 
+	 * @return the shared manager instance
+	 */
+	public static synchronized PHPTypeIndexManager getDefault() {
+		if (instance == null) {
+			instance = new PHPTypeIndexManager();
+			DLTKCore.addElementChangedListener(instance,
+					ElementChangedEvent.POST_CHANGE);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stops listening for model changes and drops all indexes.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			DLTKCore.removeElementChangedListener(instance);
+			instance.buildJob.cancel();
+			instance.updateJob.cancel();
+			synchronized (instance) {
+				instance.indexes.clear();
+				instance.building.clear();
+				instance.searching.clear();
+				instance.invalidated.clear();
+				instance.pendingUpdates.clear();
+			}
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the index of the given project if it is complete and up to date.
+	 * Otherwise <code>null</code> is returned and the index is built or
+	 * updated in the background.
+	 */
+	public synchronized PHPTypeIndex getIndex(IProject project) {
+		PHPTypeIndex index = indexes.get(project);
+		if (index == null) {
+			if (building.add(project))
+				buildJob.schedule();
+			return null;
+		}
+
+		if (pendingUpdates.containsKey(project))
+			return null;
+
+		return index;
+	}
+
+	/**
+	 * Returns the index of all types in the workspace if it is complete and up
+	 * to date, see {@link #getIndex(IProject)}.
+	 */
+	public PHPTypeIndex getWorkspaceIndex() {
+		return getIndex(null);
+	}
+
+	public synchronized void clear(IProject project) {
+		indexes.remove(project);
+		pendingUpdates.remove(project);
+		if (searching.contains(project))
+			invalidated.add(project);
+	}
+
+	public void elementChanged(ElementChangedEvent event) {
+		IModelElementDelta delta = event.getDelta();
+		if (delta == null)
+			return;
+
+		synchronized (this) {
+			if (indexes.isEmpty() && searching.isEmpty())
+				return;
+		}
+
+		Map<IModelElement, Boolean> modules = new LinkedHashMap<IModelElement, Boolean>();
+		collectChanges(delta, modules);
+		if (modules.isEmpty())
+			return;
+
+		synchronized (this) {
+			for (PHPTypeIndex index : indexes.values()) {
+				IDLTKSearchScope scope = index.getScope();
+				for (Map.Entry<IModelElement, Boolean> module : modules
+						.entrySet()) {
+					if (index.containsModule(module.getKey())
+							|| scope.encloses(module.getKey()))
+						addPendingUpdate(index.getProject(), module.getKey(),
+								module.getValue());
+				}
+			}
+
+			// the search may have missed these changes, recheck the modules
+			// once the index is complete
+			for (IProject project : searching) {
+				for (Map.Entry<IModelElement, Boolean> module : modules
+						.entrySet()) {
+					addPendingUpdate(project, module.getKey(), module
+							.getValue());
+				}
+			}
+		}
+		updateJob.schedule();
+	}
+
+	private void collectChanges(IModelElementDelta delta,
+			Map<IModelElement, Boolean> modules) {
+		IModelElement element = delta.getElement();
+		switch (element.getElementType()) {
+		case IModelElement.SOURCE_MODULE:
+			modules.put(element, Boolean
+					.valueOf(delta.getKind() == IModelElementDelta.REMOVED));
+			return;
+
+		case IModelElement.SCRIPT_MODEL:
+			break;
+
+		case IModelElement.SCRIPT_PROJECT:
+		case IModelElement.PROJECT_FRAGMENT:
+			// anything but changed children, e.g. a new build path entry or an
+			// added source folder, may change the whole scope of the project
+			if (delta.getKind() != IModelElementDelta.CHANGED
+					|| (delta.getFlags() & ~IModelElementDelta.F_CHILDREN) != 0) {
+				IScriptProject scriptProject = element.getScriptProject();
+				if (scriptProject != null) {
+					clear(scriptProject.getProject());
+					clear(null);
+				}
+				if (element.getElementType() == IModelElement.SCRIPT_PROJECT)
+					return;
+			}
+			break;
+
+		default:
+			break;
+		}
+
+		for (IModelElementDelta child : delta.getAffectedChildren()) {
+			collectChanges(child, modules);
+		}
+	}
+
+	private void addPendingUpdate(IProject project, IModelElement module,
+			Boolean removed) {
+		Map<IModelElement, Boolean> modules = pendingUpdates.get(project);
+		if (modules == null) {
+			modules = new LinkedHashMap<IModelElement, Boolean>();
+			pendingUpdates.put(project, modules);
+		}
+		modules.put(module, removed);
+	}
+
+	private synchronized IProject nextProjectToBuild() {
+		if (building.isEmpty())
+			return null;
+
+		IProject project = building.iterator().next();
+		building.remove(project);
+		searching.add(project);
+		return project;
+	}
+
+	private void buildIndex(IProject project) {
+		if (project != null && !project.isAccessible()) {
+			synchronized (this) {
+				searching.remove(project);
+				invalidated.remove(project);
+			}
+			return;
+		}
+
+		IDLTKSearchScope scope = project != null ? PHPSearchEngine
+				.createProjectScope(project) : PHPSearchEngine
+				.createWorkspaceScope();
+		PHPTypeIndex index = new PHPTypeIndex(project, scope);
+
+		Map<IModelElement, List<SearchMatch>> modules = new HashMap<IModelElement, List<SearchMatch>>();
+		for (SearchMatch match : PHPSearchEngine.findClass(ALL_TYPES, scope,
+				SearchPattern.R_PATTERN_MATCH)) {
+			IModelElement module = PHPTypeIndex.getModule(match);
+			List<SearchMatch> matches = modules.get(module);
+			if (matches == null) {
+				matches = new ArrayList<SearchMatch>(2);
+				modules.put(module, matches);
+			}
+			matches.add(match);
+		}
+
+		for (Map.Entry<IModelElement, List<SearchMatch>> entry : modules
+				.entrySet()) {
+			List<SearchMatch> matches = entry.getValue();
+			index.setModule(entry.getKey(), matches
+					.toArray(new SearchMatch[matches.size()]));
+		}
+
+		synchronized (this) {
+			searching.remove(project);
+			if (invalidated.remove(project)) {
+				// the scope changed while searching, start over
+				if (building.add(project))
+					buildJob.schedule();
+				return;
+			}
+
+			indexes.put(project, index);
+			// modules changed while searching are applied by a regular update
+			if (pendingUpdates.containsKey(project))
+				updateJob.schedule();
+		}
+	}
+
+	private void updateIndex(IProject project,
+			Map<IModelElement, Boolean> modules) {
+		PHPTypeIndex index;
+		synchronized (this) {
+			index = indexes.get(project);
+		}
+		// still searching, updated once the index is complete
+		if (index == null)
+			return;
+
+		for (Map.Entry<IModelElement, Boolean> entry : modules.entrySet()) {
+			IModelElement module = entry.getKey();
+			if (entry.getValue().booleanValue() || !module.exists()
+					|| !index.getScope().encloses(module)) {
+				index.removeModule(module);
+			} else {
+				IDLTKSearchScope scope = SearchEngine
+						.createSearchScope(module);
+				index.setModule(module, PHPSearchEngine.findClass(ALL_TYPES,
+						scope, SearchPattern.R_PATTERN_MATCH));
+			}
+		}
+
+		synchronized (this) {
+			Map<IModelElement, Boolean> pending = pendingUpdates.get(project);
+			if (pending == null)
+				return;
+
+			// keep modules that changed again while updating
+			for (Map.Entry<IModelElement, Boolean> entry : modules.entrySet()) {
+				if (pending.get(entry.getKey()) == entry.getValue())
+					pending.remove(entry.getKey());
+			}
+			if (pending.isEmpty())
+				pendingUpdates.remove(project);
+			else
+				updateJob.schedule();
+		}
+	}
+}
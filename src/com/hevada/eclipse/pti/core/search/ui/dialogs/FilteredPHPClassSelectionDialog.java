@@ -8,8 +8,9 @@
 
 package com.hevada.eclipse.pti.core.search.ui.dialogs;
 
-import java.text.Collator;
 import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -27,9 +28,10 @@ import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.dialogs.FilteredItemsSelectionDialog;
 import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
-import com.hevada.eclipse.pti.core.PHPToolkitUtil;
 import com.hevada.eclipse.pti.core.search.PHPSearchEngine;
 import com.hevada.eclipse.pti.core.search.PHPSearchMatch;
+import com.hevada.eclipse.pti.core.search.PHPTypeIndex;
+import com.hevada.eclipse.pti.core.search.PHPTypeIndexManager;
 
 public class FilteredPHPClassSelectionDialog extends
 		FilteredItemsSelectionDialog {
@@ -39,6 +41,10 @@ public class FilteredPHPClassSelectionDialog extends
 	private static final Image IMAGE_CLASS = DLTKPluginImages.DESC_OBJS_CLASS
 			.createImage();
 
+	// dialog items of the indexed matches, so labels and collation keys are
+	// computed once per class and not per dialog or keystroke
+	private static final Map<SearchMatch, PHPSearchMatch> ITEMS = new WeakHashMap<SearchMatch, PHPSearchMatch>();
+
 	private class DetailLabelProvider extends LabelProvider {
 		public String getText(Object element) {
 			if (!(element instanceof PHPSearchMatch))
@@ -58,15 +64,13 @@ public class FilteredPHPClassSelectionDialog extends
 		public String getText(Object element) {
 			if (!(element instanceof PHPSearchMatch))
 				return null;
-			return PHPToolkitUtil
-					.getClassNameWithNamespace(((PHPSearchMatch) element)
-							.getElement().getSourceModule());
+			return ((PHPSearchMatch) element).getLabel();
 		}
 
 		public Image getImage(Object element) {
 			if (!(element instanceof PHPSearchMatch))
 				return null;
-			return DLTKPluginImages.DESC_OBJS_CLASS.createImage();
+			return IMAGE_CLASS;
 		}
 	}
 
@@ -75,6 +79,9 @@ public class FilteredPHPClassSelectionDialog extends
 		setTitle("Select PHP Class");
 		setDetailsLabelProvider(new DetailLabelProvider());
 		setListLabelProvider(new ListLabelProvider());
+
+		// starts building the index in the background if it is not there yet
+		PHPTypeIndexManager.getDefault().getWorkspaceIndex();
 	}
 
 	protected Control createExtendedContentArea(Composite parent) {
@@ -104,12 +111,53 @@ public class FilteredPHPClassSelectionDialog extends
 	protected void fillContentProvider(AbstractContentProvider provider,
 			ItemsFilter filter, IProgressMonitor monitor) throws CoreException {
 		int matchRule = SearchPattern.R_PREFIX_MATCH;
-		SearchMatch[] matches = PHPSearchEngine.findClass(filter.getPattern(),
-				matchRule);
+		SearchMatch[] matches;
+		PHPTypeIndex index = PHPTypeIndexManager.getDefault()
+				.getWorkspaceIndex();
+		if (index != null) {
+			// the index only narrows the candidates, the filter does the
+			// actual matching
+			matches = index.find(getIndexPrefix(filter), matchRule);
+		} else {
+			matches = PHPSearchEngine.findClass(filter.getPattern(), matchRule);
+		}
+
 		for (SearchMatch match : matches) {
-			provider.add(new PHPSearchMatch((SourceType) match.getElement(),
-					match.getResource()), filter);
+			if (monitor != null && monitor.isCanceled())
+				return;
+			provider.add(getItem(match), filter);
+		}
+	}
+
+	private static PHPSearchMatch getItem(SearchMatch match) {
+		synchronized (ITEMS) {
+			PHPSearchMatch item = ITEMS.get(match);
+			if (item == null) {
+				item = new PHPSearchMatch((SourceType) match.getElement(), match
+						.getResource());
+				ITEMS.put(match, item);
+			}
+			return item;
+		}
+	}
+
+	/**
+	 * Returns the literal prefix of the filter pattern all matching class
+	 * names start with.
+	 */
+	private static String getIndexPrefix(ItemsFilter filter) {
+		String pattern = filter.getPattern();
+		if (filter.getMatchRule() == org.eclipse.ui.dialogs.SearchPattern.RULE_CAMELCASE_MATCH)
+			return pattern.length() > 0 ? pattern.substring(0, 1) : pattern;
+
+		int end = 0;
+		while (end < pattern.length()) {
+			char c = pattern.charAt(end);
+			if (c == '*' || c == '?' || c == '<' || c == ' ')
+				break;
+			++end;
 		}
+		return pattern.substring(0, end);
 	}
 
 	protected IDialogSettings getDialogSettings() {
@@ -125,16 +173,14 @@ public class FilteredPHPClassSelectionDialog extends
 	}
 
 	public String getElementName(Object element) {
-		return PHPToolkitUtil
-				.getClassNameWithNamespace(((PHPSearchMatch) element)
-						.getElement().getSourceModule());
+		return ((PHPSearchMatch) element).getLabel();
 	}
 
 	protected Comparator<Object> getItemsComparator() {
 		return new Comparator<Object>() {
 			public int compare(Object o1, Object o2) {
-				Collator collator = Collator.getInstance();
-				return collator.compare(o1.toString(), o2.toString());
+				return ((PHPSearchMatch) o1).getCollationKey().compareTo(
+						((PHPSearchMatch) o2).getCollationKey());
 			}
 		};
 	}
@@ -13,7 +13,8 @@ import java.io.IOException;
 
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.php.internal.debug.core.preferences.PHPexeItem;
-import org.eclipse.php.internal.debug.core.preferences.PHPexes;
+import com.hevada.eclipse.pti.core.launching.PHPExecutableInfo;
+import com.hevada.eclipse.pti.core.launching.PHPExecutableRegistry;
 import com.hevada.eclipse.pti.core.listener.IResultListener;
 
 public abstract class AbstractPHPTool {
@@ -34,23 +35,21 @@ public abstract class AbstractPHPTool {
 	}
 
 	protected static PHPexeItem getPHPExecutable(String phpExecutableId) {
-		PHPexeItem[] items = PHPexes.getInstance().getAllItems();
-		for (PHPexeItem item : items) {
-			if (item.getName().equals(phpExecutableId))
-				return item;
-		}
-
-		return null;
+		return PHPExecutableRegistry.getDefault().getItem(phpExecutableId);
 	}
 
 	protected PHPexeItem getDefaultPhpExecutable() {
-		PHPexeItem defaultPhpExec = null;
-		for (PHPexeItem phpExec : PHPexes.getInstance().getAllItems()) {
-			if (phpExec.isDefault()) {
-				defaultPhpExec = phpExec;
-			}
-		}
-		return defaultPhpExec;
+		return PHPExecutableRegistry.getDefault().getDefaultItem();
+	}
+
+	/**
+	 * Returns the version and extensions of the given PHP executable, see
+	 * {@link PHPExecutableRegistry#getInfo(PHPexeItem)}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected static PHPExecutableInfo getPHPExecutableInfo(PHPexeItem phpExe) {
+		return PHPExecutableRegistry.getDefault().getInfo(phpExe);
 	}
 
 	protected File createTempDir(String name) {
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.tools;
+
+import org.eclipse.dltk.compiler.problem.IProblem;
+import com.hevada.eclipse.pti.core.listener.IResultListener;
+import com.hevada.eclipse.pti.core.php.source.ISourceFile;
+
+/**
+ * A stream parser for line based tool output. Chunks are split into lines,
+ * only the incomplete last line of a chunk is kept in memory.
+ * 
+ * @since 1.7.0
+ */
+public abstract class AbstractPHPToolLineStreamParser implements
+		IPHPToolStreamParser {
+	protected final ISourceFile file;
+	private final IResultListener listener;
+	private final StringBuffer pending = new StringBuffer();
+
+	protected AbstractPHPToolLineStreamParser(ISourceFile file,
+			IResultListener listener) {
+		this.file = file;
+		this.listener = listener;
+	}
+
+	public synchronized void handleOutput(String output) {
+		int start = 0;
+		int end;
+		while ((end = output.indexOf('\n', start)) != -1) {
+			pending.append(output, start, end);
+			handleLine(stripCarriageReturn(pending.toString()));
+			pending.setLength(0);
+			start = end + 1;
+		}
+		pending.append(output, start, output.length());
+	}
+
+	public synchronized void finish() {
+		if (pending.length() > 0) {
+			handleLine(stripCarriageReturn(pending.toString()));
+			pending.setLength(0);
+		}
+	}
+
+	/**
+	 * Handles one line of output without the line terminator.
+	 */
+	protected abstract void handleLine(String line);
+
+	/**
+	 * Reports a recognized problem.
+	 */
+	protected void reportProblem(IProblem problem) {
+		listener.handleResult(problem);
+	}
+
+	private static String stripCarriageReturn(String line) {
+		if (line.endsWith("\r")) //$NON-NLS-1$
+			return line.substring(0, line.length() - 1);
+		return line;
+	}
+}
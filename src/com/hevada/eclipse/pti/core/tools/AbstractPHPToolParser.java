@@ -9,38 +9,817 @@
 package com.hevada.eclipse.pti.core.tools;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.dltk.compiler.problem.IProblem;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.compiler.problem.FileProblem;
+import com.hevada.eclipse.pti.core.jobs.PHPToolScheduler;
+import com.hevada.eclipse.pti.core.launching.IPHPToolLaunchConstants;
 import com.hevada.eclipse.pti.core.launching.PHPToolLauncher;
+import com.hevada.eclipse.pti.core.metrics.PHPToolMetric;
+import com.hevada.eclipse.pti.core.metrics.PHPToolMetrics;
+import com.hevada.eclipse.pti.core.listener.IOutputListener;
+import com.hevada.eclipse.pti.core.listener.IResultListener;
 import com.hevada.eclipse.pti.core.php.source.ISourceFile;
 import com.hevada.eclipse.pti.core.php.source.PHPSourceFile;
+import com.hevada.eclipse.pti.core.php.source.PHPSourceFileCache;
 import com.hevada.eclipse.pti.ui.Logger;
 
 public abstract class AbstractPHPToolParser extends AbstractPHPTool {
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private Boolean legacyLaunch;
+
 	public IProblem[] parse(IFile file) throws CoreException, IOException {
-		return parseOutput(new PHPSourceFile(file), launchFile(file));
+		return parse(file, null);
+	}
+
+	/**
+	 * Parses the given file. Canceling <code>monitor</code> terminates the
+	 * running tool. Only the result of a completed run is cached, neither a
+	 * canceled nor a failed run. Every problem returned, including cached
+	 * ones, is passed to the result listeners of this tool.
+	 * 
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @throws CoreException
+	 *             if the tool could not be run
+	 * @since 1.7.0
+	 */
+	public IProblem[] parse(IFile file, IProgressMonitor monitor)
+			throws CoreException, IOException {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+
+		String cacheKey = null;
+		QualifiedName tool = null;
+		if (isResultCacheEnabled()) {
+			PHPToolLauncher launcher = getPHPToolLauncher(file.getProject());
+			if (launcher != null) {
+				tool = launcher.getTool();
+				cacheKey = createResultCacheKey(file, launcher);
+			}
+		}
+
+		if (cacheKey != null) {
+			IProblem[] problems = PHPToolResultCache.getDefault().get(
+					cacheKey, file);
+			if (problems != null) {
+				notifyProblems(problems);
+				return problems;
+			}
+		}
+
+		IProblem[] problems = parseFile(file, monitor);
+
+		if (monitor.isCanceled())
+			throw new OperationCanceledException();
+		if (problems != null)
+			PHPToolMetrics.getDefault().record(PHPToolMetrics.PROBLEMS,
+					getMetricsTool(file.getProject()),
+					PHPToolMetric.UNIT_COUNT, problems.length);
+		if (cacheKey != null && problems != null)
+			PHPToolResultCache.getDefault().put(cacheKey, tool, problems);
+
+		return problems;
+	}
+
+	private void notifyProblems(IProblem[] problems) {
+		for (IProblem problem : problems) {
+			notifyResultListener(problem);
+		}
+	}
+
+	private String createResultCacheKey(IFile file, PHPToolLauncher launcher) {
+		return PHPToolResultCache.getDefault().createKey(file, launcher,
+				getResultCacheKey(file.getProject()));
+	}
+
+	private IProblem[] parseFile(IFile file, IProgressMonitor monitor)
+			throws CoreException, IOException {
+		PHPSourceFile sourceFile = PHPSourceFileCache.getDefault().get(file);
+
+		final List<IProblem> problems = Collections
+				.synchronizedList(new ArrayList<IProblem>());
+		IResultListener collector = new IResultListener() {
+			public void handleResult(Object result) {
+				if (result instanceof IProblem) {
+					problems.add((IProblem) result);
+					notifyResultListener(result);
+				}
+			}
+		};
+
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		final QualifiedName tool = getMetricsTool(file.getProject());
+		final IPHPToolStreamParser streamParser = createStreamParser(
+				sourceFile, collector);
+		if (streamParser == null) {
+			String output = isLegacyLaunch() ? launchFile(file) : launchFile(
+					file, null, monitor);
+			metrics.record(PHPToolMetrics.OUTPUT_SIZE, tool,
+					PHPToolMetric.UNIT_CHARACTERS, output.length());
+
+			long start = metrics.startTimer();
+			IProblem[] result = parseOutput(sourceFile, output);
+			metrics.stopTimer(PHPToolMetrics.PARSE_OUTPUT, tool, start);
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			if (result != null)
+				notifyProblems(result);
+			return result;
+		}
+
+		final long[] outputSize = new long[1];
+		IOutputListener counter = new IOutputListener() {
+			public void handleOutput(String output) {
+				outputSize[0] += output.length();
+				streamParser.handleOutput(output);
+			}
+		};
+
+		launchFile(file, counter, monitor);
+		long start = metrics.startTimer();
+		streamParser.finish();
+		metrics.stopTimer(PHPToolMetrics.PARSE_OUTPUT, tool, start);
+		metrics.record(PHPToolMetrics.OUTPUT_SIZE, tool,
+				PHPToolMetric.UNIT_CHARACTERS, outputSize[0]);
+
+		// the result of a run superseded by a newer one is stale, the listeners
+		// of revalidate() get the result of the newer run instead
+		if (monitor.isCanceled())
+			throw new OperationCanceledException();
+
+		return problems.toArray(new IProblem[problems.size()]);
+	}
+
+	/**
+	 * Parses the given file in the background and passes the problems found,
+	 * an <code>IProblem[]</code>, to <code>listener</code>. Runs are queued by
+	 * the {@link PHPToolScheduler}: for each file and tool at most one run is
+	 * waiting and one is running. A newer request replaces the waiting one and
+	 * cancels the running one, whose result is dropped. Problems a canceled
+	 * run already streamed to the result listeners of this tool are
+	 * superseded by the result the newer run passes to <code>listener</code>.
+	 * 
+	 * @see PHPToolScheduler#getCoalescedCount()
+	 * @see PHPToolScheduler#getDroppedCount()
+	 * @since 1.7.0
+	 */
+	public void revalidate(final IFile file, final IResultListener listener) {
+		PHPToolScheduler.getDefault().schedule(
+				"Validating " + file.getName(), file, getToolName(), null, //$NON-NLS-1$
+				new ICoreRunnable() {
+					public void run(IProgressMonitor monitor)
+							throws CoreException {
+						IProblem[] problems;
+						try {
+							problems = parse(file, monitor);
+						} catch (IOException e) {
+							throw new CoreException(new Status(IStatus.ERROR,
+									PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+									"Could not parse " + file.getFullPath(), e)); //$NON-NLS-1$
+						}
+
+						if (problems != null)
+							listener.handleResult(problems);
+					}
+				}, true);
+	}
+
+	/**
+	 * Returns the name the runs of this tool are queued under by
+	 * {@link #revalidate(IFile, IResultListener)}. Defaults to the class name.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected QualifiedName getToolName() {
+		return new QualifiedName(PHPToolCorePlugin.PLUGIN_ID, getClass()
+				.getName());
+	}
+
+	/**
+	 * Returns the tool the parse metrics of the given project are recorded
+	 * under. This is the tool of its launcher, which records the launch
+	 * metrics, so all metrics of a tool end up under the same name.
+	 */
+	private QualifiedName getMetricsTool(IProject project) {
+		PHPToolLauncher launcher = getPHPToolLauncher(project);
+		return launcher != null ? launcher.getTool() : getToolName();
 	}
 
+	/**
+	 * Creates a parser handling the tool output while the tool is still
+	 * running. Problems passed to <code>listener</code> are forwarded to the
+	 * result listeners of this tool right away and make up the result of
+	 * {@link #parse(IFile)}; {@link #parseOutput(ISourceFile, String)} is not
+	 * called then. The default returns <code>null</code>, meaning the output
+	 * is collected and parsed at once.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected IPHPToolStreamParser createStreamParser(ISourceFile file,
+			IResultListener listener) {
+		return null;
+	}
+
+	/**
+	 * Returns whether results of this tool are kept in the
+	 * {@link PHPToolResultCache}. Defaults to the workspace preference.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected boolean isResultCacheEnabled() {
+		return PHPToolResultCache.isResultCacheEnabled();
+	}
+
+	/**
+	 * Returns the settings that influence {@link #parseOutput} but are not
+	 * part of the tool launch, e.g. severity mappings. They become part of the
+	 * result cache key.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected String getResultCacheKey(IProject project) {
+		return ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses the given files using up to {@link #getParallelism()} concurrent
+	 * tool runs. Files that could not be parsed are logged and get an empty
+	 * problem list. If {@link #isBatchLaunchSupported()} and the command line
+	 * of the tool has a {@link PHPToolLauncher#COMMANDLINE_PLACEHOLDER_FILES}
+	 * placeholder, each run covers a whole batch of files, see
+	 * {@link #parseBatchOutput(ISourceFile[], String)}.
+	 * 
+	 * @param files
+	 *            the files to parse
+	 * @param monitor
+	 *            the progress monitor, canceling it stops all pending runs
+	 * @return the problems per file, in the iteration order of
+	 *         <code>files</code>
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 * @since 1.7.0
+	 */
+	public Map<IFile, IProblem[]> parse(Collection<IFile> files,
+			IProgressMonitor monitor) {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, files.size());
+		Map<IFile, IProblem[]> results = new LinkedHashMap<IFile, IProblem[]>();
+		if (files.isEmpty())
+			return results;
+
+		if (isBatchLaunchSupported())
+			return parseBatches(files, subMonitor);
+
+		ExecutorService executor = createExecutor(files.size());
+		List<Future<IProblem[]>> futures = new ArrayList<Future<IProblem[]>>(
+				files.size());
+		final IProgressMonitor taskMonitor = new TaskMonitor(subMonitor);
+		try {
+			for (final IFile file : files) {
+				futures.add(executor.submit(new Callable<IProblem[]>() {
+					public IProblem[] call() throws Exception {
+						return parse(file, taskMonitor);
+					}
+				}));
+			}
+
+			int i = 0;
+			for (IFile file : files) {
+				results.put(file, awaitResult(futures.get(i++), file,
+						subMonitor));
+				subMonitor.worked(1);
+			}
+		} finally {
+			for (Future<IProblem[]> future : futures) {
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+
+		return results;
+	}
+
+	private ExecutorService createExecutor(int tasks) {
+		return Executors.newFixedThreadPool(Math.min(parallelism, tasks),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "PHP Tool Parser"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * The monitor of the concurrent tool runs. Progress monitors are not
+	 * thread safe, so the runs only see whether the batch was canceled and
+	 * the progress is reported by the calling thread.
+	 */
+	private static class TaskMonitor extends NullProgressMonitor {
+		private final IProgressMonitor parent;
+
+		TaskMonitor(IProgressMonitor parent) {
+			this.parent = parent;
+		}
+
+		public boolean isCanceled() {
+			return super.isCanceled() || parent.isCanceled();
+		}
+	}
+
+	private IProblem[] awaitResult(Future<IProblem[]> future, IFile file,
+			IProgressMonitor monitor) {
+		try {
+			IProblem[] problems = await(future, monitor);
+			return problems != null ? problems : new IProblem[0];
+		} catch (ExecutionException e) {
+			Logger.logException("Could not parse " + file.getFullPath(), //$NON-NLS-1$
+					e.getCause());
+			return new IProblem[0];
+		}
+	}
+
+	private static <T> T await(Future<T> future, IProgressMonitor monitor)
+			throws ExecutionException {
+		while (true) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+
+			try {
+				return future.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+		}
+	}
+
+	private Map<IFile, IProblem[]> parseBatches(Collection<IFile> files,
+			SubMonitor monitor) {
+		Map<IFile, IProblem[]> results = new LinkedHashMap<IFile, IProblem[]>();
+		Map<IProject, List<IFile>> pending = new LinkedHashMap<IProject, List<IFile>>();
+		for (IFile file : files) {
+			IProblem[] problems = null;
+			PHPToolLauncher launcher = getPHPToolLauncher(file.getProject());
+			if (launcher != null && isResultCacheEnabled())
+				problems = PHPToolResultCache.getDefault().get(
+						createResultCacheKey(file, launcher), file);
+
+			// keeps the iteration order of files
+			results.put(file, problems);
+			if (problems != null) {
+				notifyProblems(problems);
+				monitor.worked(1);
+				continue;
+			}
+
+			List<IFile> projectFiles = pending.get(file.getProject());
+			if (projectFiles == null) {
+				projectFiles = new ArrayList<IFile>();
+				pending.put(file.getProject(), projectFiles);
+			}
+			projectFiles.add(file);
+		}
+
+		List<List<IFile>> batches = new ArrayList<List<IFile>>();
+		for (Map.Entry<IProject, List<IFile>> entry : pending.entrySet()) {
+			PHPToolLauncher launcher = getPHPToolLauncher(entry.getKey());
+			List<IFile> projectFiles = entry.getValue();
+			if (launcher == null) {
+				for (IFile file : projectFiles) {
+					batches.add(Collections.singletonList(file));
+				}
+				continue;
+			}
+
+			// spread the files over all concurrent runs
+			int maxFiles = (projectFiles.size() + parallelism - 1)
+					/ parallelism;
+			batches.addAll(launcher.createBatches(projectFiles, maxFiles));
+		}
+		if (batches.isEmpty())
+			return results;
+
+		ExecutorService executor = createExecutor(batches.size());
+		List<Future<Map<IFile, IProblem[]>>> futures = new ArrayList<Future<Map<IFile, IProblem[]>>>(
+				batches.size());
+		final IProgressMonitor taskMonitor = new TaskMonitor(monitor);
+		try {
+			for (final List<IFile> batch : batches) {
+				futures.add(executor
+						.submit(new Callable<Map<IFile, IProblem[]>>() {
+							public Map<IFile, IProblem[]> call()
+									throws Exception {
+								return parseBatch(batch, taskMonitor);
+							}
+						}));
+			}
+
+			for (int i = 0; i < batches.size(); ++i) {
+				List<IFile> batch = batches.get(i);
+				try {
+					results.putAll(await(futures.get(i), monitor));
+				} catch (ExecutionException e) {
+					Logger.logException("Could not parse " + batch.size() //$NON-NLS-1$
+							+ " files of " + batch.get(0).getProject(), e //$NON-NLS-1$
+							.getCause());
+					for (IFile file : batch) {
+						results.put(file, new IProblem[0]);
+					}
+				}
+				monitor.worked(batch.size());
+			}
+		} finally {
+			for (Future<Map<IFile, IProblem[]>> future : futures) {
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Runs the tool once for the given files of a single project and splits
+	 * the problems reported back to the files. If the output of the run
+	 * cannot be parsed, the files are parsed one by one instead.
+	 * 
+	 * @throws CoreException
+	 *             if the tool could not be run, nothing is cached then
+	 */
+	private Map<IFile, IProblem[]> parseBatch(List<IFile> files,
+			IProgressMonitor monitor) throws CoreException, IOException {
+		// nothing to split, this also covers tools without batch support
+		if (files.size() == 1)
+			return parseEach(files, monitor);
+
+		// the keys cover the contents the tool sees, not those of files
+		// changed while it runs
+		PHPToolLauncher launcher = getPHPToolLauncher(files.get(0)
+				.getProject());
+		Map<IFile, String> cacheKeys = new LinkedHashMap<IFile, String>();
+		if (launcher != null && isResultCacheEnabled()) {
+			for (IFile file : files) {
+				cacheKeys.put(file, createResultCacheKey(file, launcher));
+			}
+		}
+
+		Map<IFile, List<IProblem>> problemsPerFile = new LinkedHashMap<IFile, List<IProblem>>();
+		ISourceFile[] sourceFiles = new ISourceFile[files.size()];
+		for (int i = 0; i < sourceFiles.length; ++i) {
+			IFile file = files.get(i);
+			sourceFiles[i] = PHPSourceFileCache.getDefault().get(file);
+			problemsPerFile.put(file, new ArrayList<IProblem>());
+		}
+
+		PHPToolMetrics metrics = PHPToolMetrics.getDefault();
+		QualifiedName tool = getMetricsTool(files.get(0).getProject());
+		String output = launchFiles(files, monitor);
+		metrics.record(PHPToolMetrics.OUTPUT_SIZE, tool,
+				PHPToolMetric.UNIT_CHARACTERS, output.length());
+
+		long start = metrics.startTimer();
+		IProblem[] problems = parseBatchOutput(sourceFiles, output);
+		metrics.stopTimer(PHPToolMetrics.PARSE_OUTPUT, tool, start);
+		if (monitor.isCanceled())
+			throw new OperationCanceledException();
+		if (problems == null) {
+			Logger.log(Logger.WARNING, "Could not parse the output for " //$NON-NLS-1$
+					+ files.size() + " files of " //$NON-NLS-1$
+					+ files.get(0).getProject().getName()
+					+ ", parsing them one by one"); //$NON-NLS-1$
+			return parseEach(files, monitor);
+		}
+
+		for (IProblem problem : problems) {
+			List<IProblem> fileProblems = problem instanceof FileProblem ? problemsPerFile
+					.get(((FileProblem) problem).getOriginatingFile())
+					: null;
+			if (fileProblems == null) {
+				Logger.trace("Dropped problem of an unknown file: " //$NON-NLS-1$
+						+ problem.getMessage());
+				continue;
+			}
+			fileProblems.add(problem);
+			notifyResultListener(problem);
+		}
+
+		Map<IFile, IProblem[]> results = new LinkedHashMap<IFile, IProblem[]>();
+		for (Map.Entry<IFile, List<IProblem>> entry : problemsPerFile
+				.entrySet()) {
+			IFile file = entry.getKey();
+			List<IProblem> fileProblems = entry.getValue();
+			IProblem[] result = fileProblems
+					.toArray(new IProblem[fileProblems.size()]);
+			results.put(file, result);
+
+			metrics.record(PHPToolMetrics.PROBLEMS, tool,
+					PHPToolMetric.UNIT_COUNT, result.length);
+			String cacheKey = cacheKeys.get(file);
+			if (cacheKey != null)
+				PHPToolResultCache.getDefault().put(cacheKey,
+						launcher.getTool(), result);
+		}
+
+		return results;
+	}
+
+	private Map<IFile, IProblem[]> parseEach(List<IFile> files,
+			IProgressMonitor monitor) throws CoreException, IOException {
+		Map<IFile, IProblem[]> results = new LinkedHashMap<IFile, IProblem[]>();
+		for (IFile file : files) {
+			IProblem[] problems = parse(file, monitor);
+			results.put(file, problems != null ? problems : new IProblem[0]);
+		}
+		return results;
+	}
+
+	/**
+	 * Parses the combined output of a run covering several files, see
+	 * {@link #isBatchLaunchSupported()}. Each problem has to be a
+	 * {@link FileProblem} of one of the given files; it is handed to the file
+	 * it originates from, other problems are dropped. Like
+	 * {@link #parseOutput(ISourceFile, String)}, this method should not notify
+	 * the result listeners itself.
+	 * 
+	 * @return the problems of all files or <code>null</code> if the output
+	 *         could not be parsed, the files are then parsed one by one by
+	 *         {@link #parseOutput(ISourceFile, String)}
+	 * @since 1.7.0
+	 */
+	protected IProblem[] parseBatchOutput(ISourceFile[] files, String output) {
+		return null;
+	}
+
+	/**
+	 * Returns whether the tool may be run once for many files by
+	 * {@link #parse(Collection, IProgressMonitor)}. Tools returning
+	 * <code>true</code> use a {@link PHPToolLauncher#COMMANDLINE_PLACEHOLDER_FILES}
+	 * placeholder in their command line and implement
+	 * {@link #parseBatchOutput(ISourceFile[], String)}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected boolean isBatchLaunchSupported() {
+		return false;
+	}
+
+	/**
+	 * @since 1.7.0
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent tool runs used by
+	 * {@link #parse(Collection, IProgressMonitor)}. Defaults to the number of
+	 * available processors.
+	 * 
+	 * @since 1.7.0
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Returns whether a subclass overrides {@link #launchFile(IFile)}, which
+	 * then stays the launch of {@link #parseOutput(ISourceFile, String)}.
+	 */
+	private boolean isLegacyLaunch() {
+		if (legacyLaunch == null) {
+			boolean overridden = false;
+			for (Class<?> type = getClass(); type != AbstractPHPToolParser.class
+					&& !overridden; type = type.getSuperclass()) {
+				try {
+					type.getDeclaredMethod("launchFile", IFile.class); //$NON-NLS-1$
+					overridden = true;
+				} catch (NoSuchMethodException e) {
+				}
+			}
+			legacyLaunch = Boolean.valueOf(overridden);
+		}
+
+		return legacyLaunch.booleanValue();
+	}
+
+	/**
+	 * Launches the tool for the given file.
+	 * 
+	 * @return the output, an empty string if the launch failed
+	 * @deprecated Runs launched by this method can neither be canceled nor
+	 *             report a failed launch. Tools overriding it keep being
+	 *             launched through it by
+	 *             {@link #parse(IFile, IProgressMonitor)} unless they use a
+	 *             stream parser; override
+	 *             {@link #launchFile(IFile, IOutputListener, IProgressMonitor)}
+	 *             instead.
+	 */
 	protected String launchFile(IFile file) {
+		try {
+			return launchFile(file, null, null);
+		} catch (CoreException e) {
+			Logger.logException(e);
+			return ""; //$NON-NLS-1$
+		}
+	}
 
+	/**
+	 * Launches the tool for the given file and streams its standard output to
+	 * <code>outputListener</code> while it runs. Canceling
+	 * <code>monitor</code> terminates the tool. This is the launch
+	 * {@link #parse(IFile, IProgressMonitor)} uses unless a subclass overrides
+	 * {@link #launchFile(IFile)}.
+	 * 
+	 * @param outputListener
+	 *            receives the standard output, may be <code>null</code>
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * 
+	 * @throws CoreException
+	 *             if the tool could not be run
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 * @since 1.7.0
+	 */
+	protected String launchFile(IFile file, IOutputListener outputListener,
+			IProgressMonitor monitor) throws CoreException {
 		String output = null;
 		try {
-			PHPToolLauncher launcher = getPHPToolLauncher(file.getProject());
-			output = launcher.launch(file);
+			PHPToolLauncher launcher = createLauncher(file.getProject());
+			if (!isPooledLaunchSupported())
+				launcher.setPooled(false);
+			if (isDirectLaunchSupported())
+				launcher.setDirect(true);
+			launcher.setRefreshMode(getRefreshMode());
+			if (outputListener != null)
+				launcher.addStandardOutputListener(outputListener);
+			try {
+				output = launcher.launch(file, monitor);
+			} finally {
+				if (outputListener != null)
+					launcher.removeStandardOutputListener(outputListener);
+			}
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (CoreException e) {
+			throw e;
 		} catch (Exception e) {
-			Logger.logException(e);
+			throw createLaunchException(file.getFullPath().toString(), e);
 		}
 
-		if (output == null)
-			return "";
-		else
+		return checkOutput(output, file.getFullPath().toString(), monitor);
+	}
+
+	/**
+	 * Returns the output of a launch, which is <code>null</code> if the
+	 * launch failed or was canceled.
+	 */
+	private static String checkOutput(String output, String target,
+			IProgressMonitor monitor) throws CoreException {
+		if (output != null)
 			return output;
+		if (monitor != null && monitor.isCanceled())
+			throw new OperationCanceledException();
+
+		throw createLaunchException(target, null);
+	}
+
+	private static CoreException createLaunchException(String target,
+			Throwable cause) {
+		return new CoreException(new Status(IStatus.ERROR,
+				PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+				"Could not run the tool for " + target, cause)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Launches the tool once for the given files of a single project, see
+	 * {@link PHPToolLauncher#launch(Collection, IProgressMonitor)}.
+	 * 
+	 * @throws CoreException
+	 *             if the tool could not be run
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 * @since 1.7.0
+	 */
+	protected String launchFiles(List<IFile> files, IProgressMonitor monitor)
+			throws CoreException {
+		String target = files.size() + " files of " //$NON-NLS-1$
+				+ files.get(0).getProject().getName();
+		String output = null;
+		try {
+			PHPToolLauncher launcher = createLauncher(files.get(0).getProject());
+			if (!isPooledLaunchSupported())
+				launcher.setPooled(false);
+			if (isDirectLaunchSupported())
+				launcher.setDirect(true);
+			launcher.setRefreshMode(getRefreshMode());
+			output = launcher.launch(files, monitor);
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (CoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw createLaunchException(target, e);
+		}
+
+		return checkOutput(output, target, monitor);
+	}
+
+	/**
+	 * Returns a copy of the launcher of the given project, so the options and
+	 * listeners of one launch do not leak into concurrent launches sharing
+	 * the launcher of the tool.
+	 * 
+	 * @throws CoreException
+	 *             if the tool has no launcher for the project
+	 */
+	private PHPToolLauncher createLauncher(IProject project)
+			throws CoreException {
+		PHPToolLauncher launcher = getPHPToolLauncher(project);
+		if (launcher == null)
+			throw new CoreException(new Status(IStatus.ERROR,
+					PHPToolCorePlugin.PLUGIN_ID, IStatus.OK,
+					"No launcher configured for " + project.getName(), null)); //$NON-NLS-1$
+
+		return launcher.copy();
+	}
+
+	/**
+	 * Returns whether the tool may run in a long-lived pooled PHP worker.
+	 * Tools relying on a fresh interpreter per file should return
+	 * <code>false</code>.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected boolean isPooledLaunchSupported() {
+		return true;
+	}
+
+	/**
+	 * Returns whether the tool may run as a plain process, without a launch
+	 * configuration and console, see {@link PHPToolLauncher#setDirect(boolean)}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected boolean isDirectLaunchSupported() {
+		return false;
+	}
+
+	/**
+	 * Returns which resources are refreshed after the tool ran, see
+	 * {@link IPHPToolLaunchConstants#ATTR_REFRESH_MODE}. Defaults to the
+	 * refresh tab of the launch configuration, as tools may write reports
+	 * into the workspace. Analyzers that only write to their standard output
+	 * should return {@link IPHPToolLaunchConstants#REFRESH_MODE_NONE}, tools
+	 * changing just the parsed file
+	 * {@link IPHPToolLaunchConstants#REFRESH_MODE_LAUNCHED_FILE}.
+	 * 
+	 * @since 1.7.0
+	 */
+	protected String getRefreshMode() {
+		return IPHPToolLaunchConstants.REFRESH_MODE_CONFIGURATION;
 	}
 
 	protected abstract PHPToolLauncher getPHPToolLauncher(IProject project);
 
+	/**
+	 * Parses the output of a run for the given file. The problems returned
+	 * are passed to the result listeners of this tool by
+	 * {@link #parse(IFile, IProgressMonitor)}, this method should not notify
+	 * them itself.
+	 * 
+	 * @return the problems or <code>null</code> if the output could not be
+	 *         parsed
+	 */
 	protected abstract IProblem[] parseOutput(ISourceFile file, String output);
 }
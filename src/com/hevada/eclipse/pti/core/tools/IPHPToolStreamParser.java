@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.tools;
+
+import com.hevada.eclipse.pti.core.listener.IOutputListener;
+
+/**
+ * Parses the standard output of a tool incrementally while the tool is still
+ * running. {@link #handleOutput(String)} receives the output in chunks that
+ * are not aligned to lines or records. Problems are reported to the
+ * {@link com.hevada.eclipse.pti.core.listener.IResultListener} the parser was
+ * created with as soon as they are recognized.
+ * 
+ * @see AbstractPHPToolParser#createStreamParser(com.hevada.eclipse.pti.core.php.source.ISourceFile,
+ *      com.hevada.eclipse.pti.core.listener.IResultListener)
+ * @since 1.7.0
+ */
+public interface IPHPToolStreamParser extends IOutputListener {
+	/**
+	 * Called after the last chunk, the parser should report what is left in
+	 * its buffers.
+	 */
+	public void finish();
+}
@@ -0,0 +1,535 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.core.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.dltk.compiler.problem.DefaultProblemIdentifier;
+import org.eclipse.dltk.compiler.problem.IProblem;
+import org.eclipse.dltk.compiler.problem.ProblemSeverity;
+import org.eclipse.php.internal.debug.core.preferences.PHPexeItem;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+import com.hevada.eclipse.pti.core.compiler.problem.DefaultProblem;
+import com.hevada.eclipse.pti.core.compiler.problem.FileProblem;
+import com.hevada.eclipse.pti.core.launching.IPHPToolLaunchConstants;
+import com.hevada.eclipse.pti.core.launching.PHPToolINIFileCache;
+import com.hevada.eclipse.pti.core.launching.PHPToolLauncher;
+import com.hevada.eclipse.pti.core.launching.PHPToolOpcache;
+import com.hevada.eclipse.pti.core.php.inifile.INIFileEntry;
+
+/**
+ * Persistent cache of parsed tool results. Entries are keyed by the content
+ * hash of the file and everything that influences a tool run: the tool, its
+ * script and arguments, the modification times of the script and the
+ * libraries on its include path, the php.ini entries and the PHP executable
+ * version.
+ * 
+ * Results are stored in a compact binary format below the plugin state
+ * location, one directory per tool. The least recently used entries are
+ * removed once {@link #getMaxEntries()} or {@link #getMaxBytes()} is
+ * exceeded. Changing a workspace or project preference of a tool drops all
+ * results of that tool.
+ * 
+ * Only problems created as {@link FileProblem} or {@link DefaultProblem} are
+ * cached, results containing other problem types are not, since their type
+ * could not be restored.
+ * 
+ * @since 1.7.0
+ */
+public class PHPToolResultCache {
+	private static final String CACHE_DIR = "resultcache"; //$NON-NLS-1$
+	private static final String ENTRY_EXTENSION = ".bin"; //$NON-NLS-1$
+	private static final int MAGIC = 0x50544943; // "PTIC"
+	private static final int FORMAT_VERSION = 1;
+	private static final byte TYPE_DEFAULT_PROBLEM = 0;
+	private static final byte TYPE_FILE_PROBLEM = 1;
+
+	private static PHPToolResultCache instance;
+
+	private final File cacheDir;
+	private LinkedHashMap<String, Long> index;
+	private long totalBytes = 0;
+	private int maxEntries = 50000;
+	private long maxBytes = 64L * 1024 * 1024;
+	private final Map<String, IEclipsePreferences> watchedNodes = new HashMap<String, IEclipsePreferences>();
+
+	private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			invalidate(event.getNode().name());
+		}
+	};
+
+	PHPToolResultCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the shared cache instance
+	 * 
+	 * @return the shared cache instance
+	 */
+	public static synchronized PHPToolResultCache getDefault() {
+		if (instance == null) {
+			File stateLocation = PHPToolCorePlugin.getDefault()
+					.getStateLocation().toFile();
+			instance = new PHPToolResultCache(new File(stateLocation, CACHE_DIR));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Returns whether the result cache is enabled by the workspace preference
+	 * {@link IPHPToolLaunchConstants#PREF_RESULT_CACHE}.
+	 */
+	public static boolean isResultCacheEnabled() {
+		return Platform.getPreferencesService().getBoolean(
+				PHPToolCorePlugin.PLUGIN_ID,
+				IPHPToolLaunchConstants.PREF_RESULT_CACHE, false, null);
+	}
+
+	/**
+	 * Creates the cache key for running the given launcher on the given file.
+	 * 
+	 * @param file
+	 *            the file to analyze
+	 * @param launcher
+	 *            the launcher that would run the tool
+	 * @param parserKey
+	 *            additional parser settings, may be <code>null</code>
+	 * @return the key or <code>null</code> if the file could not be read
+	 */
+	public String createKey(IFile file, PHPToolLauncher launcher,
+			String parserKey) {
+		watchPreferences(launcher.getTool(), file.getProject());
+
+		MessageDigest digest = PHPToolINIFileCache.createDigest();
+		byte[] buffer = new byte[8192];
+		try {
+			InputStream in = file.getContents(true);
+			try {
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, count);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (CoreException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+
+		StringBuffer key = new StringBuffer();
+		key.append(launcher.getTool()).append('\0');
+		key.append(launcher.getPHPScript()).append('\0');
+		if (launcher.getPHPScript() != null)
+			key.append(PHPToolOpcache.createLibraryKey(launcher.getPHPScript(),
+					launcher.getINIEntries())).append('\0');
+		key.append(launcher.getCommandLineArgs()).append('\0');
+
+		INIFileEntry[] iniEntries = launcher.getINIEntries();
+		if (iniEntries != null) {
+			for (INIFileEntry entry : iniEntries) {
+				key.append(entry.getSection()).append('\0');
+				key.append(entry.getName()).append('\0');
+				key.append(entry.getValue()).append('\0');
+				key.append(entry.isAdditional()).append('\0');
+			}
+		}
+
+		PHPexeItem phpExe = launcher.getPHPExecutable();
+		if (phpExe != null) {
+			File executable = phpExe.getExecutable();
+			key.append(executable).append('\0');
+			key.append(executable.lastModified()).append('\0');
+			key.append(phpExe.getVersion()).append('\0');
+		}
+
+		key.append(file.getFullPath()).append('\0');
+		key.append(parserKey);
+
+		digest.update(key.toString().getBytes(StandardCharsets.UTF_8));
+		return toolDirectory(launcher.getTool()) + '/'
+				+ PHPToolINIFileCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the cached problems for the given key or <code>null</code> if
+	 * there are none.
+	 * 
+	 * @param key
+	 *            the key, <code>null</code> if none could be created
+	 */
+	public IProblem[] get(String key, IFile file) {
+		if (key == null)
+			return null;
+
+		File entry = new File(cacheDir, key + ENTRY_EXTENSION);
+		synchronized (this) {
+			if (!getIndex().containsKey(key))
+				return null;
+
+			// refresh the access order and keep it for the next session
+			getIndex().get(key);
+			entry.setLastModified(System.currentTimeMillis());
+		}
+
+		try {
+			return read(entry, file);
+		} catch (IOException e) {
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the problems for the given key. Problems that are not plain
+	 * {@link FileProblem} or {@link DefaultProblem} instances are not stored.
+	 * 
+	 * @param key
+	 *            the key, nothing is stored if it is <code>null</code>
+	 * @param tool
+	 *            the tool that created the problems, used for invalidation
+	 */
+	public void put(String key, QualifiedName tool, IProblem[] problems) {
+		if (key == null)
+			return;
+
+		for (IProblem problem : problems) {
+			if (problem == null
+					|| (problem.getClass() != FileProblem.class && problem
+							.getClass() != DefaultProblem.class))
+				return;
+		}
+
+		watchPreferences(tool, null);
+
+		File entry = new File(cacheDir, key + ENTRY_EXTENSION);
+		entry.getParentFile().mkdirs();
+		try {
+			write(entry, problems);
+		} catch (IOException e) {
+			entry.delete();
+			return;
+		}
+
+		synchronized (this) {
+			Long old = getIndex().put(key, Long.valueOf(entry.length()));
+			if (old != null)
+				totalBytes -= old.longValue();
+			totalBytes += entry.length();
+			trim();
+		}
+	}
+
+	/**
+	 * Removes all cached results of the given tool.
+	 */
+	public void invalidate(QualifiedName tool) {
+		invalidate(tool.getQualifier());
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public synchronized void clear() {
+		File[] toolDirs = cacheDir.listFiles();
+		if (toolDirs != null) {
+			for (File toolDir : toolDirs) {
+				deleteDirectory(toolDir);
+			}
+		}
+		index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		totalBytes = 0;
+	}
+
+	/**
+	 * Stops watching tool preferences.
+	 */
+	public synchronized void dispose() {
+		for (IEclipsePreferences node : watchedNodes.values()) {
+			try {
+				node.removePreferenceChangeListener(preferenceListener);
+			} catch (IllegalStateException e) {
+				// the node of a deleted project
+			}
+		}
+		watchedNodes.clear();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+		trim();
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = Math.max(1024, maxBytes);
+		trim();
+	}
+
+	private synchronized void invalidate(String qualifier) {
+		String prefix = toolDirectory(qualifier) + '/';
+		Iterator<Map.Entry<String, Long>> it = getIndex().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			if (entry.getKey().startsWith(prefix)) {
+				totalBytes -= entry.getValue().longValue();
+				it.remove();
+			}
+		}
+		deleteDirectory(new File(cacheDir, toolDirectory(qualifier)));
+	}
+
+	private synchronized void remove(String key) {
+		Long size = getIndex().remove(key);
+		if (size != null)
+			totalBytes -= size.longValue();
+		new File(cacheDir, key + ENTRY_EXTENSION).delete();
+	}
+
+	private synchronized void watchPreferences(QualifiedName tool,
+			IProject project) {
+		String qualifier = tool.getQualifier();
+		if (qualifier == null)
+			return;
+
+		watchPreferences(InstanceScope.INSTANCE.getNode(qualifier));
+		if (project != null)
+			watchPreferences(new ProjectScope(project).getNode(qualifier));
+	}
+
+	private void watchPreferences(IEclipsePreferences node) {
+		IEclipsePreferences watched = watchedNodes.get(node.absolutePath());
+		// the node of a project is replaced once it is deleted and recreated
+		if (watched == node)
+			return;
+
+		node.addPreferenceChangeListener(preferenceListener);
+		watchedNodes.put(node.absolutePath(), node);
+	}
+
+	private void trim() {
+		Iterator<Map.Entry<String, Long>> it = getIndex().entrySet().iterator();
+		while (it.hasNext() && (index.size() > maxEntries || totalBytes > maxBytes)) {
+			Map.Entry<String, Long> entry = it.next();
+			totalBytes -= entry.getValue().longValue();
+			new File(cacheDir, entry.getKey() + ENTRY_EXTENSION).delete();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Builds the access ordered index from the files on disk, ordered by their
+	 * last access.
+	 */
+	private LinkedHashMap<String, Long> getIndex() {
+		if (index != null)
+			return index;
+
+		index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		totalBytes = 0;
+
+		File[] toolDirs = cacheDir.listFiles();
+		if (toolDirs == null)
+			return index;
+
+		List<File> entries = new ArrayList<File>();
+		for (File toolDir : toolDirs) {
+			File[] files = toolDir.listFiles();
+			if (files != null)
+				entries.addAll(Arrays.asList(files));
+		}
+
+		File[] sorted = entries.toArray(new File[entries.size()]);
+		Arrays.sort(sorted, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+
+		for (File entry : sorted) {
+			String name = entry.getName();
+			if (!name.endsWith(ENTRY_EXTENSION))
+				continue;
+
+			String key = entry.getParentFile().getName() + '/'
+					+ name.substring(0, name.length() - ENTRY_EXTENSION.length());
+			index.put(key, Long.valueOf(entry.length()));
+			totalBytes += entry.length();
+		}
+
+		return index;
+	}
+
+	private void write(File entry, IProblem[] problems) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(entry)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeInt(problems.length);
+			for (IProblem problem : problems) {
+				DefaultProblem p = (DefaultProblem) problem;
+				out.writeByte(p instanceof FileProblem ? TYPE_FILE_PROBLEM
+						: TYPE_DEFAULT_PROBLEM);
+				writeString(out, p.getOriginatingFileName());
+				writeString(out, p.getMessage());
+				writeString(out, p.getID() != null ? DefaultProblemIdentifier
+						.encode(p.getID()) : null);
+
+				String[] arguments = p.getArguments();
+				out.writeInt(arguments != null ? arguments.length : -1);
+				if (arguments != null) {
+					for (String argument : arguments) {
+						writeString(out, argument);
+					}
+				}
+
+				writeString(out, p.getProblemSeverity() != null ? p
+						.getProblemSeverity().name() : null);
+				out.writeInt(p.getSourceStart());
+				out.writeInt(p.getSourceEnd());
+				out.writeInt(p.getSourceLineNumber());
+				out.writeInt(p.getProblemColumn());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private IProblem[] read(File entry, IFile file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(entry)));
+		try {
+			if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION)
+				throw new IOException("Unknown result cache format"); //$NON-NLS-1$
+
+			IProblem[] problems = new IProblem[in.readInt()];
+			for (int i = 0; i < problems.length; ++i) {
+				byte type = in.readByte();
+				String fileName = readString(in);
+				String message = readString(in);
+				String id = readString(in);
+
+				int argumentCount = in.readInt();
+				String[] arguments = null;
+				if (argumentCount >= 0) {
+					arguments = new String[argumentCount];
+					for (int j = 0; j < argumentCount; ++j) {
+						arguments[j] = readString(in);
+					}
+				}
+
+				String severity = readString(in);
+				int start = in.readInt();
+				int end = in.readInt();
+				int line = in.readInt();
+				int column = in.readInt();
+
+				ProblemSeverity problemSeverity = severity != null ? ProblemSeverity
+						.valueOf(severity) : null;
+				if (type == TYPE_FILE_PROBLEM) {
+					problems[i] = new FileProblem(resolveFile(fileName, file),
+							message, id != null ? DefaultProblemIdentifier
+									.decode(id) : null, arguments,
+							problemSeverity, start, end, line, column);
+				} else {
+					problems[i] = new DefaultProblem(fileName, message,
+							id != null ? DefaultProblemIdentifier.decode(id)
+									: null, arguments, problemSeverity, start,
+							end, line, column);
+				}
+			}
+			return problems;
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static IFile resolveFile(String fileName, IFile file) {
+		if (fileName == null
+				|| fileName.equals(file.getFullPath().toOSString()))
+			return file;
+
+		return ResourcesPlugin.getWorkspace().getRoot()
+				.getFile(Path.fromOSString(fileName));
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static String toolDirectory(QualifiedName tool) {
+		return toolDirectory(tool.getQualifier());
+	}
+
+	private static String toolDirectory(String qualifier) {
+		return qualifier != null ? qualifier.replaceAll("[^\\w.-]", "_") : "_"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2009, 2010 Sven Kiera
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package com.hevada.eclipse.pti.ui;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.console.ConsolePlugin;
+import org.eclipse.ui.console.IConsole;
+import org.eclipse.ui.console.IConsoleListener;
+import org.eclipse.ui.console.IConsoleManager;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
+
+/**
+ * Writes text to the PHP tools console without blocking the caller. Text is
+ * queued and written in batches by a background job. If more than
+ * {@link #getMaxBufferedChars()} characters are waiting, the oldest text is
+ * dropped and a note about it is written instead. The console and its stream
+ * are looked up once and kept until the console is removed.
+ * 
+ * @since 1.7.0
+ */
+public class ConsoleSink implements IConsoleListener {
+	private static final long FLUSH_DELAY = 100;
+
+	private static ConsoleSink instance;
+
+	private final String consoleName;
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+	private final AtomicLong bufferedChars = new AtomicLong();
+	private final AtomicInteger droppedCount = new AtomicInteger();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Job flushJob;
+
+	private volatile long maxBufferedChars = 1024 * 1024;
+	// not guarded by the lock, consolesRemoved must not block on a flush
+	private volatile MessageConsole console;
+	private volatile MessageConsoleStream stream;
+	private boolean listening;
+
+	ConsoleSink(String consoleName) {
+		this.consoleName = consoleName;
+
+		flushJob = new Job("Console Output") { //$NON-NLS-1$
+			protected IStatus run(IProgressMonitor monitor) {
+				flushScheduled.set(false);
+				flush();
+				return Status.OK_STATUS;
+			}
+		};
+		flushJob.setSystem(true);
+	}
+
+	/**
+	 * Returns the sink of the PHP tools console
+	 * 
+	 * @return the sink of the PHP tools console
+	 */
+	public static synchronized ConsoleSink getDefault() {
+		if (instance == null)
+			instance = new ConsoleSink(Logger.CONSOLE_NAME);
+
+		return instance;
+	}
+
+	/**
+	 * Writes all queued text and releases the console stream.
+	 */
+	public static synchronized void disposeDefault() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Queues the given text for the console.
+	 */
+	public void write(String text) {
+		if (text == null || text.length() == 0)
+			return;
+
+		queue.offer(text);
+		long buffered = bufferedChars.addAndGet(text.length());
+		while (buffered > maxBufferedChars) {
+			String dropped = queue.poll();
+			if (dropped == null)
+				break;
+			buffered = bufferedChars.addAndGet(-dropped.length());
+			droppedCount.incrementAndGet();
+		}
+
+		if (flushScheduled.compareAndSet(false, true))
+			flushJob.schedule(FLUSH_DELAY);
+	}
+
+	/**
+	 * Writes all queued text to the console right away.
+	 */
+	public synchronized void flush() {
+		if (queue.isEmpty() && droppedCount.get() == 0)
+			return;
+
+		StringBuffer batch = new StringBuffer();
+		int dropped = droppedCount.getAndSet(0);
+		if (dropped > 0)
+			batch.append("[" + dropped + " console messages dropped]\n"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		String text;
+		while ((text = queue.poll()) != null) {
+			bufferedChars.addAndGet(-text.length());
+			batch.append(text);
+		}
+
+		MessageConsoleStream out = getStream();
+		if (out != null)
+			out.print(batch.toString());
+	}
+
+	/**
+	 * Flushes the queued text and closes the console stream. Text written
+	 * afterwards opens a new stream.
+	 */
+	public synchronized void close() {
+		flushJob.cancel();
+		// text queued from now on has to schedule the job again, anything
+		// queued before is written by the flush below
+		flushScheduled.set(false);
+		flush();
+
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+			stream = null;
+		}
+		if (listening) {
+			ConsolePlugin.getDefault().getConsoleManager()
+					.removeConsoleListener(this);
+			listening = false;
+		}
+		console = null;
+	}
+
+	public long getMaxBufferedChars() {
+		return maxBufferedChars;
+	}
+
+	public void setMaxBufferedChars(long maxBufferedChars) {
+		this.maxBufferedChars = Math.max(1, maxBufferedChars);
+	}
+
+	public void consolesAdded(IConsole[] consoles) {
+	}
+
+	public void consolesRemoved(IConsole[] consoles) {
+		for (IConsole removed : consoles) {
+			if (removed == console) {
+				console = null;
+				stream = null;
+			}
+		}
+	}
+
+	private MessageConsoleStream getStream() {
+		MessageConsoleStream current = stream;
+		if (current != null)
+			return current;
+
+		ConsolePlugin plugin = ConsolePlugin.getDefault();
+		if (plugin == null)
+			return null;
+
+		IConsoleManager conMan = plugin.getConsoleManager();
+		if (!listening) {
+			conMan.addConsoleListener(this);
+			listening = true;
+		}
+
+		MessageConsole found = null;
+		for (IConsole existing : conMan.getConsoles()) {
+			if (consoleName.equals(existing.getName())) {
+				found = (MessageConsole) existing;
+				break;
+			}
+		}
+
+		if (found == null) {
+			// no console found, so create a new one
+			found = new MessageConsole(consoleName, PHPToolCorePlugin
+					.getDefault().getImageRegistry().getDescriptor(
+							PHPToolCorePlugin.IMG_PHPSRC));
+			conMan.addConsoles(new IConsole[] { found });
+		}
+
+		current = found.newMessageStream();
+		console = found;
+		stream = current;
+		return current;
+	}
+}
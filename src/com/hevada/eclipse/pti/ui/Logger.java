@@ -11,18 +11,13 @@ package com.hevada.eclipse.pti.ui;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.ui.console.ConsolePlugin;
-import org.eclipse.ui.console.IConsole;
-import org.eclipse.ui.console.IConsoleManager;
-import org.eclipse.ui.console.MessageConsole;
-import org.eclipse.ui.console.MessageConsoleStream;
 import org.osgi.framework.Bundle;
 import com.hevada.eclipse.pti.core.PHPToolCorePlugin;
 
 public class Logger {
 	private static final String PLUGIN_ID = PHPToolCorePlugin.PLUGIN_ID; //$NON-NLS-1$
 
-	private static final String CONSOLE_NAME = "PHP Tools Output";
+	static final String CONSOLE_NAME = "PHP Tools Output";
 
 	public static final int OK = IStatus.OK; // 0
 	public static final int INFO = IStatus.INFO; // 1
@@ -58,10 +53,7 @@ public class Logger {
 	}
 
 	protected static void _logToConsole(String output, boolean toTop) {
-		MessageConsole myConsole = findConsole(CONSOLE_NAME, toTop);
-
-		MessageConsoleStream out = myConsole.newMessageStream();
-		out.print(output);
+		ConsoleSink.getDefault().write(output);
 	}
 
 	public static void log(int level, String message) {
@@ -103,30 +95,4 @@ public class Logger {
 	public static void logToConsoleWithoutBreak(String message) {
 		_logToConsole(message, false);
 	}
-
-	private static MessageConsole findConsole(String name, boolean toTop) {
-		ConsolePlugin plugin = ConsolePlugin.getDefault();
-		IConsoleManager conMan = plugin.getConsoleManager();
-		IConsole[] existing = conMan.getConsoles();
-
-		MessageConsole myConsole = null;
-		for (int i = 0; i < existing.length; i++) {
-			if (name.equals(existing[i].getName())) {
-				myConsole = (MessageConsole) existing[i];
-				break;
-			}
-		}
-
-		if (myConsole == null) {
-			// no console found, so create a new one
-			myConsole = new MessageConsole(name, PHPToolCorePlugin.getDefault().getImageRegistry().getDescriptor(
-					PHPToolCorePlugin.IMG_PHPSRC));
-			conMan.addConsoles(new IConsole[] { myConsole });
-		}
-
-		// if (toTop)
-		// conMan.showConsoleView(myConsole);
-
-		return myConsole;
-	}
 }